@@ -18,6 +18,13 @@
 package syntelos.android;
 
 import syntelos.iou.Chbuf;
+import syntelos.iou.Hex;
+import syntelos.iou.Hexview;
+import syntelos.iou.Journal;
+import syntelos.iou.Pool;
+import syntelos.iou.Replace;
+import syntelos.iou.Spsc;
+import syntelos.iou.Utf8;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -34,7 +41,6 @@ import android.text.Editable;
 import android.widget.EditText;
 
 import java.io.File;
-import java.io.FileDescriptor;
 import java.nio.CharBuffer;
 
 
@@ -54,12 +60,21 @@ public final class Reference
 	    extends Post
 	{
 
-	    public final String text;
+	    public final CharSequence text;
+	    /**
+	     * The text was delivered in progress updates, and is empty
+	     * here.
+	     */
+	    public final boolean streamed;
 
-	    public Read(String text){
+	    public Read(CharSequence text){
+		this(text,false);
+	    }
+	    public Read(CharSequence text, boolean streamed){
 		super(Post.Status.SUCCESS);
 		if (null != text){
 		    this.text = text;
+		    this.streamed = streamed;
 		}
 		else {
 		    throw new IllegalArgumentException();
@@ -68,6 +83,7 @@ public final class Reference
 	    public Read(Throwable t, String m){
 		super(t,m);
 		this.text = "";
+		this.streamed = false;
 	    }
 	}
 	public final static class Write
@@ -114,6 +130,10 @@ public final class Reference
     }
 
     final static String ROOT = "syntelos";
+    /**
+     * Private directory of edit journals
+     */
+    final static String JOURNAL = "journal";
 
     private static Syntelos context;
 
@@ -357,6 +377,40 @@ public final class Reference
     public String getFilepath(){
 	return this.file.getPath();
     }
+    /**
+     * @return Paged hex view of the file, to be closed by the caller
+     */
+    public Hexview hexview()
+	throws java.io.IOException
+    {
+	return new Hexview(this.file);
+    }
+    /**
+     * The journal is named by the SHA-1 digest of the absolute path
+     * of the file, in the private journal directory.  No I/O is
+     * performed: the journal file is opened by the caller, off the
+     * UI thread.
+     *
+     * @param sync Force journal commits to the device
+     *
+     * @return Edit journal of the file, to be closed by the caller
+     */
+    public Journal journal(boolean sync){
+
+	File dir = new File(Reference.context.getApplicationInfo().dataDir,JOURNAL);
+
+	try {
+	    java.security.MessageDigest sha = java.security.MessageDigest.getInstance("SHA-1");
+
+	    byte[] digest = sha.digest(this.file.getAbsolutePath().getBytes(Chbuf.UTF8));
+
+	    return new Journal(new File(dir,Hex.encode(digest)),this.file,sync);
+	}
+	catch (java.security.NoSuchAlgorithmException exc){
+
+	    throw new IllegalStateException(exc);
+	}
+    }
     public Reader reader(Syntelos context){
 
 	return new Reader(context);
@@ -376,9 +430,42 @@ public final class Reference
     public final static class Reader
 	extends android.os.AsyncTask<Reference,Integer,Post.Read>
     {
+	/**
+	 * Read block size
+	 */
+	private final static int BLOCK = 0x10000;//(64K)
+	/**
+	 * Minimum interval of progress updates, in milliseconds
+	 */
+	private final static long PROGRESS = 250L;
+	/**
+	 * Files beyond this byte length are opened progressively: the
+	 * first characters are shown as soon as they are decoded
+	 */
+	public final static int FIRST = 0x4000;//(16K)
+	/**
+	 * Streaming hand off capacity, in characters
+	 */
+	private final static int RING = 0x40000;//(256K)
+
 	private final Syntelos context;
 
 	private final ContentResolver resolver;
+	/**
+	 * Progressive open from BG thread to UI thread, published
+	 * before the first progress update
+	 */
+	private volatile Spsc.Chars ring;
+	/**
+	 * Monitor of {@link #requested}
+	 */
+	private final Object drained = new Object();
+	/**
+	 * A progress update is outstanding until the UI thread drains
+	 * the ring, so that one update at a time is queued to the UI
+	 * thread
+	 */
+	private boolean requested;
 
 
 	/**
@@ -408,11 +495,21 @@ public final class Reference
 
 	    final Uri uri = params[0].uri;
 	    try {
-		final StringBuilder strbuf = new StringBuilder();
+		ParcelFileDescriptor pfd = this.resolver.openFileDescriptor(uri,"r");
 
-		copy(strbuf,new java.io.InputStreamReader(this.resolver.openInputStream(uri)));
+		long size = pfd.getStatSize();
 
-		return new Post.Read(strbuf.toString());
+		java.io.InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+
+		if (-1 < size && size <= FIRST){
+
+		    return new Post.Read(this.read(in,size));
+		}
+		else {
+		    this.stream(in,size);
+
+		    return new Post.Read("",true);
+		}
 	    }
 	    catch (Throwable t){
 
@@ -424,34 +521,271 @@ public final class Reference
 	    }
 	}
 	/**
+	 * Decode UTF-8 blocks directly into a text array presized from
+	 * the byte length, which is the maximum character length.  This
+	 * is the open of files up to {@link #FIRST} bytes.  Content of
+	 * unknown length is streamed.  Malformed input is replaced with
+	 * U+FFFD.
+	 * 
 	 * From BG thread
+	 * 
+	 * @param size Byte length, from zero to {@link #FIRST}
+	 * 
+	 * @return View of the text array, without copying
 	 */
-	private void copy(java.lang.StringBuilder strbuf, java.io.Reader in)
+	private CharSequence read(java.io.InputStream in, long size)
 	    throws java.io.IOException
 	{
+	    final long start = android.os.SystemClock.uptimeMillis();
+
+	    char[] text = new char[(int)size];
+	    int length = 0;
+
+	    byte[] block = Pool.Bytes(BLOCK);
 	    try {
-		char[] chbuf = new char[512];
-		int cnt, ofs = 0;
-		while (0 < (cnt = in.read(chbuf,0,512))){
+		Utf8.Decoder dec = new Utf8.Decoder(Utf8.Decoder.OUTPUT,true);
 
-		    strbuf.append(chbuf,0,cnt);
+		long read = 0L, progress = start;
+		int cnt;
+		while (0 < (cnt = in.read(block,0,BLOCK))){
 
-		    ofs += cnt;
+		    read += cnt;
+
+		    for (int ofs = 0; ofs < cnt; ){
+
+			if (2 > (text.length-length)){
+			    char[] copier = new char[Math.max(BLOCK,(text.length<<1))];
+			    System.arraycopy(text,0,copier,0,length);
+			    text = copier;
+			}
+
+			length += dec.decode(block,ofs,(cnt-ofs),text,length,(text.length-length));
+
+			ofs += dec.consumed();
+		    }
 
 		    if (isCancelled()){
 
 			break;
 		    }
 		    else {
+			long now = android.os.SystemClock.uptimeMillis();
+			if (PROGRESS <= (now-progress)){
+
+			    progress = now;
+
+			    publishProgress((0 < size)?((int)((read*100L)/size)):(-1));
+			}
+		    }
+		}
+		if (length == text.length){
+		    char[] copier = new char[length+1];
+		    System.arraycopy(text,0,copier,0,length);
+		    text = copier;
+		}
+		length += dec.finish(text,length);
+	    }
+	    finally {
+		Pool.Release(block);
+		in.close();
+	    }
+
+	    Syntelos.LI("Reference.Reader read %d chars in %d ms",length,(android.os.SystemClock.uptimeMillis()-start));
+
+	    return CharBuffer.wrap(text,0,length);
+	}
+	/**
+	 * Decode UTF-8 blocks into the ring for the UI thread.  The
+	 * first progress update follows the first {@link #FIRST}
+	 * characters, and following updates are throttled.  The UI
+	 * thread drains the ring on each update.  When the ring is
+	 * full, this thread waits for the UI thread to drain the
+	 * outstanding update.  The task completes when the UI thread
+	 * has drained the ring.  Malformed input is replaced with
+	 * U+FFFD.
+	 * 
+	 * From BG thread
+	 * 
+	 * @param size Byte length, or negative for unknown
+	 */
+	private void stream(java.io.InputStream in, long size)
+	    throws java.io.IOException, InterruptedException
+	{
+	    final long start = android.os.SystemClock.uptimeMillis();
+
+	    final Spsc.Chars ring = new Spsc.Chars(RING);
+	    this.ring = ring;
+
+	    byte[] block = Pool.Bytes(BLOCK);
+	    try {
+		Utf8.Decoder dec = new Utf8.Decoder(Utf8.Decoder.OUTPUT,true);
+		final char[] output = dec.output();
+
+		long read = 0L, length = 0L, progress = start;
+		boolean first = true;
+		int cnt;
+		while (0 < (cnt = in.read(block,0,BLOCK))){
+
+		    read += cnt;
+
+		    for (int ofs = 0; ofs < cnt; ){
+
+			int many = dec.decode(block,ofs,(cnt-ofs));
+
+			ofs += dec.consumed();
+
+			if (this.offer(ring,output,many,read,size))
+
+			    length += many;
+			else
+			    return;
+		    }
+
+		    if (isCancelled()){
+
+			return;
+		    }
+		    else {
+			long now = android.os.SystemClock.uptimeMillis();
+			if ((first && FIRST <= length) || PROGRESS <= (now-progress)){
 
-			publishProgress(ofs);
+			    first = false;
+			    progress = now;
+
+			    this.request(read,size);
+			}
 		    }
 		}
+		int tail = dec.finish(output,0);
+
+		if (this.offer(ring,output,tail,read,size))
+
+		    length += tail;
+		else
+		    return;
+		/*
+		 * Hand off the remainder
+		 */
+		while (ring.capacity() > ring.writable(ring.capacity())){
+
+		    this.request(read,size);
+
+		    if (!this.await())
+			return;
+		}
+
+		Syntelos.LI("Reference.Reader streamed %d chars in %d ms",length,(android.os.SystemClock.uptimeMillis()-start));
 	    }
 	    finally {
+		ring.close();
+		Pool.Release(block);
 		in.close();
 	    }
 	}
+	/**
+	 * Offer decoded text to the ring, waiting for the UI thread
+	 * to drain the ring when full.
+	 * 
+	 * From BG thread
+	 * 
+	 * @return False when cancelled
+	 */
+	private boolean offer(Spsc.Chars ring, char[] src, int many, long read, long size)
+	    throws InterruptedException
+	{
+	    for (int o = 0; o < many; ){
+
+		int k = ring.offer(src,o,(many-o));
+		if (0 < k){
+
+		    o += k;
+		}
+		else {
+		    this.request(read,size);
+
+		    if (!this.await())
+			return false;
+		}
+	    }
+	    return true;
+	}
+	/**
+	 * Publish a progress update, unless one is outstanding.
+	 * 
+	 * From BG thread
+	 */
+	private void request(long read, long size){
+
+	    synchronized(this.drained){
+
+		if (!this.requested){
+
+		    this.requested = true;
+
+		    publishProgress((0 < size)?((int)((read*100L)/size)):(-1));
+		}
+	    }
+	}
+	/**
+	 * Wait for the UI thread to drain the ring for the outstanding
+	 * progress update.
+	 * 
+	 * From BG thread
+	 * 
+	 * @return False when cancelled
+	 */
+	private boolean await()
+	    throws InterruptedException
+	{
+	    synchronized(this.drained){
+
+		while (this.requested){
+
+		    if (isCancelled())
+			return false;
+		    else
+			this.drained.wait(PROGRESS);
+		}
+	    }
+	    return (!isCancelled());
+	}
+	/**
+	 * Append the streamed text available in the ring, and release
+	 * the BG thread for the outstanding progress update.
+	 * 
+	 * From UI thread
+	 * 
+	 * @return Number of characters appended
+	 */
+	public int drainTo(Appendable dst)
+	    throws java.io.IOException
+	{
+	    try {
+		Spsc.Chars ring = this.ring;
+		if (null != ring){
+
+		    return ring.drainTo(dst,Integer.MAX_VALUE);
+		}
+		else {
+		    return 0;
+		}
+	    }
+	    finally {
+		synchronized(this.drained){
+
+		    this.requested = false;
+
+		    this.drained.notifyAll();
+		}
+	    }
+	}
+	/**
+	 * From UI thread
+	 */
+	protected void onProgressUpdate(Integer... progress){
+
+	    this.context.onProgressReader(this);
+	}
 	/**
 	 * From UI thread
 	 */
@@ -459,7 +793,13 @@ public final class Reference
 
 	    Syntelos.LI("Reference.Reader.onPostExecute");
 
-	    this.context.onPostReader(r);
+	    if (r.streamed){
+
+		this.context.onPostStream(this);
+	    }
+	    else {
+		this.context.onPostReader(r);
+	    }
 	}
 
 	public String toString(){
@@ -482,12 +822,33 @@ public final class Reference
     public final static class Writer
 	extends android.os.AsyncTask<Reference,Float,Post.Write>
     {
+	/**
+	 * Preference to skip the sync of the saved file, for a faster
+	 * and less durable save
+	 */
+	public final static String PREF_FAST = "save.fast";
+	/**
+	 * Characters per document chunk
+	 */
+	private final static int CHUNK = 0x2000;//(8K)
+
 	private final Syntelos context;
 
 	private final ContentResolver resolver;
 
+	/**
+	 * Document, read from the BG thread a chunk at a time.  The
+	 * editor is read only while saving, so that the document does
+	 * not change under the save.
+	 */
 	private final Editable source;
 
+	private final int length;
+	/**
+	 * Force the content to the device before the rename
+	 */
+	private final boolean sync;
+
 
 	/**
 	 * From UI thread
@@ -498,9 +859,12 @@ public final class Reference
 		this.context = context;
 		this.resolver = context.getContentResolver();
 
+		this.sync = (!android.preference.PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_FAST,false));
+
 		final EditText source = context.editor;
 		if (null != source){
 		    this.source = source.getText();
+		    this.length = this.source.length();
 		}
 		else {
 		    throw new IllegalArgumentException();
@@ -526,75 +890,169 @@ public final class Reference
 	    Uri uri = ref.uri;
 	    File fil = ref.file;
 
-	    final String text = this.source.toString();
+	    ParcelFileDescriptor pfd = null;
 	    try {
-		/*
-		 * Copy asset file descriptor
-		 */
-		java.io.Writer os = new java.io.OutputStreamWriter(this.resolver.openOutputStream(uri));
+		if (null != fil && this.replace(fil)){
+
+		    return new Post.Write();
+		}
+
 		try {
-		    os.write(text.toCharArray());
-		    os.flush();
+		    /*
+		     * Content provider descriptor
+		     */
+		    pfd = this.resolver.openFileDescriptor(uri,"wt");
 		}
-		finally {
-		    os.close();
+		catch (SecurityException sec){
+		    /*
+		     * File descriptor
+		     */
+		    pfd = ParcelFileDescriptor.open(fil,(ParcelFileDescriptor.MODE_WRITE_ONLY|
+							 ParcelFileDescriptor.MODE_CREATE|
+							 ParcelFileDescriptor.MODE_TRUNCATE));
 		}
-		return new Post.Write();
-	    }
-	    catch (SecurityException sec){
-		/*
-		 * Copy parcel file descriptor
-		 */
-		ParcelFileDescriptor pfd = null;
-		try {
-		    pfd = ParcelFileDescriptor.open(fil,ParcelFileDescriptor.MODE_WRITE_ONLY);
-		    if (null != pfd){
 
-			FileDescriptor fd = pfd.getFileDescriptor();
+		if (null != pfd){
 
-			java.io.FileOutputStream os = new java.io.FileOutputStream(fd);
+		    java.io.FileOutputStream os = new java.io.FileOutputStream(pfd.getFileDescriptor());
 
-			java.nio.channels.FileChannel fc = os.getChannel();
+		    java.nio.channels.FileChannel fc = os.getChannel();
 
-			CharBuffer cb = CharBuffer.wrap(text);
-			{
-			    cb.rewind();
-			}
-			Chbuf.write(cb,fc);
+		    this.write(fc);
 
-			return new Post.Write();
-		    }
-		    else {
-			throw new java.io.FileNotFoundException(uri.toString());
+		    if (this.sync){
+
+			fc.force(true);
 		    }
+		    return new Post.Write();
+		}
+		else {
+		    throw new java.io.FileNotFoundException(uri.toString());
 		}
-		catch (Throwable t){
+	    }
+	    catch (Throwable t){
 
-		    String m = String.format("Error writing '%s'.",uri.toString());
+		String m = String.format("Error writing '%s'.",uri.toString());
 
-		    Syntelos.LE(t,m);
+		Syntelos.LE(t,m);
 
-		    return new Post.Write(t,m);
+		return new Post.Write(t,m);
+	    }
+	    finally {
+		if (null != pfd){
+		    try {
+			pfd.close();
+		    }
+		    catch (java.io.IOException iox){
+
+			Syntelos.LE(iox,"Error closing '%s'.",uri.toString());
+		    }
+		}
+	    }
+	}
+	/**
+	 * Transactional save: write a sibling temporary file, force it
+	 * to the device unless in fast mode, rename it over the target,
+	 * and force the directory to the device.  A failure before the
+	 * rename leaves the target intact.
+	 * 
+	 * From BG thread
+	 * 
+	 * @return False when the temporary file could not be created or
+	 * renamed, for the caller to write the target in place
+	 * 
+	 * @see syntelos.iou.Replace
+	 */
+	private boolean replace(File target)
+	    throws java.io.IOException
+	{
+	    Replace replace = new Replace(){
+		    protected void write(java.nio.channels.FileChannel out)
+			throws java.io.IOException
+		    {
+			Writer.this.write(out);
+		    }
+		    protected void sync(File dir)
+			throws java.io.IOException
+		    {
+			Writer.Sync(dir);
+		    }
+		};
+	    return replace.replace(target,this.sync);
+	}
+	/**
+	 * Force a directory to the device with fsync, so that a rename
+	 * in it survives a power failure.  A file system without
+	 * directory sync (EINVAL) is ignored.
+	 * 
+	 * From BG thread
+	 */
+	private static void Sync(File dir)
+	    throws java.io.IOException
+	{
+	    try {
+		java.io.FileDescriptor fd = android.system.Os.open(dir.getPath(),android.system.OsConstants.O_RDONLY,0);
+		try {
+		    android.system.Os.fsync(fd);
 		}
 		finally {
-		    if (null != pfd){
-			try {
-			    pfd.close();
-			}
-			catch (java.io.IOException iox){
+		    android.system.Os.close(fd);
+		}
+	    }
+	    catch (android.system.ErrnoException exc){
 
-			    Syntelos.LE(iox,"Error closing '%s'.",uri.toString());
-			}
-		    }
+		if (android.system.OsConstants.EINVAL != exc.errno){
+
+		    throw new java.io.IOException(exc);
 		}
 	    }
-	    catch (Throwable t){
+	}
+	/**
+	 * Encode the document to UTF-8 a chunk at a time, from the
+	 * document into a pooled array, and from the encoder output to
+	 * the channel.  No copy of the whole document is made.
+	 * 
+	 * From BG thread
+	 */
+	private void write(java.nio.channels.FileChannel out)
+	    throws java.io.IOException
+	{
+	    final Editable source = this.source;
+	    final int length = this.length;
 
-		String m = String.format("Error writing '%s'.",uri.toString());
+	    char[] chunk = Pool.Chars(CHUNK);
+	    try {
+		Utf8.Encoder enc = new Utf8.Encoder();
 
-		Syntelos.LE(t,m);
+		java.nio.ByteBuffer bb = java.nio.ByteBuffer.wrap(enc.output());
 
-		return new Post.Write(t,m);
+		for (int ofs = 0; ofs < length; ){
+
+		    if (isCancelled())
+			throw new java.io.InterruptedIOException("Save cancelled.");
+
+		    int many = Math.min(CHUNK,(length-ofs));
+
+		    source.getChars(ofs,(ofs+many),chunk,0);
+
+		    ofs += many;
+
+		    for (int cc = 0; cc < many; cc += enc.consumed()){
+
+			bb.limit(enc.encode(chunk,cc,(many-cc)));
+			bb.position(0);
+
+			Chbuf.Drain(bb,out);
+		    }
+		}
+
+		bb.limit(enc.finish());
+		bb.position(0);
+
+		Chbuf.Drain(bb,out);
+	    }
+	    finally {
+		Pool.Release(chunk);
 	    }
 	}
 	/**
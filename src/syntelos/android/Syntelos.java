@@ -47,6 +47,11 @@ import static android.widget.TextView.BufferType;
 
 import java.io.File;
 
+import syntelos.iou.Hexview;
+import syntelos.iou.Journal;
+import syntelos.iou.Pool;
+import syntelos.iou.Tokenizer;
+
 import static syntelos.android.Reference.Post.Status.*;
 
 /**
@@ -267,6 +272,16 @@ public abstract class Syntelos
     };
 
 
+    /**
+     * Milliseconds from an edit to the journal commit, collecting
+     * the edits of the interval into one commit
+     */
+    protected final static long COMMIT = 500L;
+    /**
+     * Journal file I/O off the UI thread, in order
+     */
+    private final static java.util.concurrent.ExecutorService JOURNAL = java.util.concurrent.Executors.newSingleThreadExecutor();
+
     protected Reference reference;
     protected TextView history;
     protected EditText editor;
@@ -275,6 +290,96 @@ public abstract class Syntelos
 
     protected android.os.AsyncTask bgtask;
 
+    protected Hexview hexview;
+
+    protected long viewed;
+
+    /**
+     * Optional syntax tokenizer, following every edit
+     */
+    protected Tokenizer tokenizer;
+
+    /**
+     * A progressive open is appending to the editor
+     */
+    protected boolean streaming;
+
+    /**
+     * A save was requested during an open, to run when the open
+     * completes
+     */
+    protected boolean deferred;
+
+    /**
+     * An open is in progress, from the read until the text is loaded
+     * and the journal has been replayed
+     */
+    protected boolean opening;
+
+    /**
+     * The text of the open has been loaded
+     */
+    protected boolean loaded;
+
+    /**
+     * The journal of the open has been replayed, or failed
+     */
+    protected boolean replayed;
+
+    /**
+     * Edits recovered from the journal, to be applied when the text
+     * is loaded.  The editor is read only until then.
+     */
+    protected Journal.Edits recovery;
+
+    /**
+     * The editor is read only, during an open or a save
+     */
+    protected boolean locked;
+
+    private android.text.method.KeyListener keys;
+
+    private int keys_type;
+
+    /**
+     * Write ahead journal of edits following the last open or save
+     */
+    protected Journal journal;
+
+    /**
+     * Journal records are being replayed into the editor
+     */
+    protected boolean replaying;
+
+    /**
+     * Journal size at the text of the last save
+     */
+    protected long journaled;
+
+    private final android.os.Handler handler = new android.os.Handler();
+
+    private boolean committing;
+
+    private final Runnable committer = new Runnable(){
+	    public void run(){
+
+		Syntelos.this.committing = false;
+
+		commitJournal();
+	    }
+	};
+
+    private boolean compacting;
+
+    private final Runnable compactor = new Runnable(){
+	    public void run(){
+
+		Syntelos.this.compacting = false;
+
+		compactJournal();
+	    }
+	};
+
 
     public Syntelos(){
 	super();
@@ -283,7 +388,94 @@ public abstract class Syntelos
 
     public void eval(){
     }
+    /**
+     * Install a tokenizer over the current text, or remove it with
+     * null.
+     */
+    public void tokenizer(Tokenizer tokenizer){
+
+	EditText editor = this.editor;
+	if (null != tokenizer && null != editor){
+
+	    tokenizer.reset(editor.getText());
+	}
+	this.tokenizer = tokenizer;
+    }
     public void view(){
+
+	this.view(this.viewed);
+    }
+    /**
+     * Show the hex page containing the offset, rendering only that
+     * page from the file mapping.
+     */
+    public void view(long offset){
+
+	android.os.AsyncTask bg = this.bgtask;
+	if (bg instanceof Reference.Writer && android.os.AsyncTask.Status.FINISHED != bg.getStatus()){
+
+	    LI("Not viewing '%s' while saving.",this.reference.toString());
+	}
+	else if (null != this.reference){
+	    try {
+		Hexview hv = this.hexview;
+		if (null == hv){
+
+		    hv = this.reference.hexview();
+
+		    this.hexview = hv;
+		}
+		final long page = hv.pageOf(offset);
+		final long pages = hv.pages();
+		final int bytes = hv.page();
+
+		this.viewed = (page*bytes);
+
+		String text = hv.page(page);
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(this);
+		builder.setTitle(String.format("%s %d/%d",this.reference.getFilename(),(page+1),pages));
+
+		if ((page+1) < pages){
+		    builder.setPositiveButton(R.string.next, new DialogInterface.OnClickListener(){
+			    public void onClick(DialogInterface dialog, int id){
+
+				view(Syntelos.this.viewed+bytes);
+			    }
+			});
+		}
+		if (0 < page){
+		    builder.setNegativeButton(R.string.prev, new DialogInterface.OnClickListener(){
+			    public void onClick(DialogInterface dialog, int id){
+
+				view(Syntelos.this.viewed-bytes);
+			    }
+			});
+		}
+		builder.setNeutralButton(R.string.cancel, new DialogInterface.OnClickListener(){
+			public void onClick(DialogInterface dialog, int id){}
+		    });
+
+		Context context = builder.getContext();
+		TextView view = new TextView(context);
+		{
+		    view.setTypeface(android.graphics.Typeface.MONOSPACE);
+		    view.setHorizontallyScrolling(true);
+		    view.setText(text);
+		}
+		android.widget.HorizontalScrollView hscroll = new android.widget.HorizontalScrollView(context);
+		hscroll.addView(view);
+		android.widget.ScrollView vscroll = new android.widget.ScrollView(context);
+		vscroll.addView(hscroll);
+
+		builder.setView(vscroll);
+		builder.create().show();
+	    }
+	    catch (Exception exc){
+
+		LE(exc,"Error viewing '%s'.",this.reference.toString());
+	    }
+	}
     }
     public void open(Reference r){
 
@@ -291,8 +483,22 @@ public abstract class Syntelos
 
 	    this.reference = r;
 
+	    this.streaming = false;
+	    this.deferred = false;
+
+	    closeView();
+
 	    checkBg("opening");
+	    /*
+	     * The editor is read only until the text is shown and the
+	     * journal replayed
+	     */
+	    lock();
 
+	    this.opening = true;
+	    this.loaded = false;
+
+	    openJournal();
 	    try {
 		this.checkStoragePermissions();
 
@@ -305,6 +511,8 @@ public abstract class Syntelos
 	    catch (Exception exc){
 
 		LE(exc,"Error fetching '%s'.",r.toString());
+
+		opened(false);
 	    }
 	}
 	else {
@@ -336,6 +544,10 @@ public abstract class Syntelos
 
 	if (null != r){
 
+	    if (r != this.reference){
+
+		closeJournal();
+	    }
 	    this.reference = r;
 
 	    this.save();
@@ -343,9 +555,24 @@ public abstract class Syntelos
     }
     public void save(){
 
-	if (null != this.reference){
+	if (this.opening){
+
+	    this.deferred = true;
+
+	    LI("Deferring save of '%s' until open completes.",this.reference.toString());
+	}
+	else if (null != this.reference){
 
 	    checkBg("saving");
+	    /*
+	     * The save replaces or truncates the file under the view
+	     * mapping
+	     */
+	    closeView();
+	    /*
+	     * The writer reads the editor text from the BG thread
+	     */
+	    lock();
 	    try {
 		this.checkStoragePermissions();
 
@@ -353,11 +580,24 @@ public abstract class Syntelos
 		{
 		    this.bgtask = writer;
 		}
+		/*
+		 * Mark the journal at the saved text: the editor is
+		 * read only until the save completes.  Without a
+		 * journal, one is opened when the save succeeds.
+		 */
+		Journal journal = this.journal;
+		if (null != journal){
+
+		    this.journaled = journal.size();
+		}
+
 		writer.execute(this.reference);
 	    }
 	    catch (Exception exc){
 
 		LE(exc,"Error storing '%s'.",this.reference.toString());
+
+		unlock();
 	    }
 	}
     }
@@ -365,16 +605,400 @@ public abstract class Syntelos
 
 	setTitle(Reference.ROOT);
 
+	checkBg("clearing");
+	/*
+	 * Detach the journal before clearing the editor, so that the
+	 * clear is not recorded: the journal recovers the unsaved
+	 * edits on the next open of the file
+	 */
+	closeJournal();
+
 	EditText editor = this.editor;
 	if (null != editor){
 
 	    editor.getText().clear();
 	}
 
-	checkBg("clearing");
+	this.streaming = false;
+	this.deferred = false;
+	this.opening = false;
+	this.recovery = null;
+
+	unlock();
+
+	closeView();
 
 	this.state = this.state.clear(State.EMPTY);
     }
+    protected void closeView(){
+
+	Hexview hv = this.hexview;
+	if (null != hv){
+
+	    this.hexview = null;
+	    this.viewed = 0L;
+	    try {
+		hv.close();
+	    }
+	    catch (java.io.IOException exc){
+
+		LE(exc,"Error closing view of '%s'.",this.reference.toString());
+	    }
+	}
+    }
+    /**
+     * Make the editor read only, retaining its key listener and
+     * input type.
+     */
+    protected void lock(){
+
+	EditText editor = this.editor;
+	if (null != editor && (!this.locked)){
+
+	    this.keys = editor.getKeyListener();
+	    this.keys_type = editor.getInputType();
+
+	    editor.setKeyListener(null);
+	}
+	this.locked = true;
+    }
+    /**
+     * Restore the key listener and input type of the editor.
+     */
+    protected void unlock(){
+
+	if (this.locked){
+
+	    this.locked = false;
+
+	    EditText editor = this.editor;
+	    if (null != editor && null != this.keys){
+
+		editor.setKeyListener(this.keys);
+		editor.setRawInputType(this.keys_type);
+	    }
+	    this.keys = null;
+	}
+    }
+    /**
+     * Make the editor writable once the text is shown and the
+     * journal has been replayed.  Recovered edits wait for the text
+     * to be loaded, with the editor read only, so that the recovered
+     * edits precede any new edit.  When the text is loaded, apply
+     * the recovered edits and complete the open.
+     */
+    protected void proceed(){
+
+	if (this.opening && this.replayed){
+
+	    if (this.loaded){
+
+		Journal.Edits recovery = this.recovery;
+		if (null != recovery){
+
+		    this.recovery = null;
+
+		    recover(recovery);
+		}
+		opened(true);
+	    }
+	    else if (this.streaming && null == this.recovery){
+
+		unlock();
+	    }
+	}
+    }
+    /**
+     * Complete an open: make the editor writable, and run a save
+     * requested during the open when the text was loaded.  When the
+     * text was not loaded, edits are not journaled.
+     */
+    protected void opened(boolean loaded){
+
+	this.opening = false;
+	this.recovery = null;
+
+	if (!loaded){
+
+	    closeJournal();
+	}
+	unlock();
+
+	if (this.deferred){
+
+	    this.deferred = false;
+
+	    if (loaded){
+
+		save();
+	    }
+	    else {
+		String m = String.format("Save of '%s' not done: open failed.",this.reference.getFilename());
+
+		LE(m);
+
+		android.widget.Toast.makeText(this,m,android.widget.Toast.LENGTH_LONG).show();
+	    }
+	}
+    }
+    protected boolean journalSync(){
+
+	return (!PreferenceManager.getDefaultSharedPreferences(this).getBoolean(Reference.Writer.PREF_FAST,false));
+    }
+    /**
+     * Open the journal of the reference in the background, before
+     * the file is read.  Unsaved edits found in the journal are
+     * collected in the background, and applied to the editor in one
+     * step when the text is loaded.  New edits are recorded from the
+     * first edit of the streamed text, following the recovered
+     * edits.
+     */
+    protected void openJournal(){
+
+	closeJournal();
+
+	this.replayed = false;
+	this.recovery = null;
+
+	if (null != this.reference){
+
+	    final Journal journal = this.reference.journal(journalSync());
+
+	    final Journal.Edits edits = new Journal.Edits();
+
+	    this.journal = journal;
+
+	    JOURNAL.execute(new Runnable(){
+		    public void run(){
+			Exception error = null;
+			try {
+			    journal.open(edits);
+			}
+			catch (Exception exc){
+
+			    error = exc;
+			}
+			final Exception thrown = error;
+
+			Syntelos.this.handler.post(new Runnable(){
+				public void run(){
+
+				    onJournalOpen(journal,edits,thrown);
+				}
+			    });
+		    }
+		});
+	}
+	else {
+	    this.replayed = true;
+	}
+    }
+    /**
+     * Retain the edits replayed from the journal, unless the journal
+     * has since been closed.
+     */
+    protected void onJournalOpen(Journal journal, Journal.Edits edits, Exception error){
+
+	if (journal == this.journal){
+
+	    this.replayed = true;
+
+	    if (null != error){
+
+		LE(error,"Error opening journal of '%s'.",this.reference.toString());
+
+		closeJournal();
+	    }
+	    else if (0 < edits.size()){
+
+		this.recovery = edits;
+	    }
+	    proceed();
+	}
+    }
+    /**
+     * Apply the edits recovered from the journal to the loaded text,
+     * without recording them again.
+     */
+    protected void recover(Journal.Edits edits){
+
+	EditText editor = this.editor;
+	if (null != editor){
+
+	    final Editable text = editor.getText();
+
+	    int applied;
+
+	    this.replaying = true;
+	    try {
+		applied = edits.apply(new Journal.Target(){
+			public int length(){
+			    return text.length();
+			}
+			public void replace(int start, int end, char[] t, int ofs, int len){
+
+			    text.replace(start,end,new String(t,ofs,len));
+			}
+		    });
+	    }
+	    finally {
+		this.replaying = false;
+	    }
+
+	    if (applied == edits.size())
+
+		LI("Recovered %d edits of '%s'.",applied,this.reference.toString());
+	    else
+		LE("Recovered %d of %d edits of '%s'.",applied,edits.size(),this.reference.toString());
+	}
+    }
+    /**
+     * Record an edit in the journal, scheduling its commit.  When the
+     * journal is large, schedule a save to compact it.
+     */
+    protected void recordJournal(CharSequence s, int start, int before, int count){
+
+	Journal journal = this.journal;
+	if (null != journal){
+
+	    char[] text = Pool.Chars(Math.max(1,count));
+	    try {
+		android.text.TextUtils.getChars(s,start,(start+count),text,0);
+
+		journal.record(start,before,text,0,count);
+	    }
+	    catch (java.io.IOException exc){
+
+		LE(exc,"Error recording journal of '%s'.",this.reference.toString());
+	    }
+	    finally {
+		Pool.Release(text);
+	    }
+
+	    if (!this.committing){
+
+		this.committing = true;
+
+		this.handler.postDelayed(this.committer,COMMIT);
+	    }
+
+	    if (Journal.COMPACT < journal.size() && (!this.compacting)){
+
+		this.compacting = true;
+
+		this.handler.post(this.compactor);
+	    }
+	}
+    }
+    /**
+     * Save to compact a large journal, outside of the text change
+     * callback, when no task is running.
+     */
+    protected void compactJournal(){
+
+	Journal journal = this.journal;
+	if (null != journal && Journal.COMPACT < journal.size() && (!this.opening)){
+
+	    android.os.AsyncTask bg = this.bgtask;
+	    if (null == bg || android.os.AsyncTask.Status.FINISHED == bg.getStatus()){
+
+		save();
+	    }
+	}
+    }
+    /**
+     * Write and force the recorded edits in the background.
+     */
+    protected void commitJournal(){
+
+	final Journal journal = this.journal;
+	if (null != journal){
+
+	    JOURNAL.execute(new Runnable(){
+		    public void run(){
+			try {
+			    journal.commit();
+			}
+			catch (java.io.IOException exc){
+
+			    LE(exc,"Error committing journal '%s'.",journal.getFile());
+			}
+		    }
+		});
+	}
+    }
+    /**
+     * Following a save, discard the saved edits from the journal in
+     * the background.  Without a journal, open one over the saved
+     * file.  A journal that fails to reset is closed, so that its
+     * records do not collect in memory.
+     */
+    protected void resetJournal(){
+
+	Journal current = this.journal;
+	if (null == current && null != this.reference){
+
+	    current = this.reference.journal(journalSync());
+
+	    this.journal = current;
+	    this.journaled = Journal.HEADER;
+	}
+
+	final Journal journal = current;
+	if (null != journal){
+
+	    final long mark = this.journaled;
+
+	    JOURNAL.execute(new Runnable(){
+		    public void run(){
+			try {
+			    journal.reset(mark);
+			}
+			catch (java.io.IOException exc){
+
+			    LE(exc,"Error resetting journal '%s'.",journal.getFile());
+
+			    Syntelos.this.handler.post(new Runnable(){
+				    public void run(){
+
+					if (journal == Syntelos.this.journal){
+
+					    closeJournal();
+					}
+				    }
+				});
+			}
+		    }
+		});
+	}
+    }
+    /**
+     * Commit and close the journal in the background.
+     */
+    protected void closeJournal(){
+
+	final Journal journal = this.journal;
+	if (null != journal){
+
+	    this.journal = null;
+	    this.journaled = 0L;
+
+	    this.handler.removeCallbacks(this.committer);
+	    this.committing = false;
+
+	    JOURNAL.execute(new Runnable(){
+		    public void run(){
+			try {
+			    journal.close();
+			}
+			catch (java.io.IOException exc){
+
+			    LE(exc,"Error closing journal '%s'.",journal.getFile());
+			}
+		    }
+		});
+	}
+    }
 
     protected void checkBg(String when){
 
@@ -404,16 +1028,29 @@ public abstract class Syntelos
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count){
 
+	Tokenizer tokenizer = this.tokenizer;
+	if (null != tokenizer){
+
+	    tokenizer.edit(s,start,before,count);
+	}
+
 	if (this.state.is(State.POST)){
 
 	    this.state = this.state.push(State.CLEAN);
 
 	}
-	else if (this.state.isnot(State.DIRTY)){
+	else {
+	    if (!this.replaying){
 
-	    this.state = this.state.push(State.DIRTY);
+		recordJournal(s,start,before,count);
+	    }
 
-	    invalidateOptionsMenu();
+	    if (this.state.isnot(State.DIRTY)){
+
+		this.state = this.state.push(State.DIRTY);
+
+		invalidateOptionsMenu();
+	    }
 	}
 
 	//LI("onTextChanged [%s]",this.state);
@@ -422,11 +1059,79 @@ public abstract class Syntelos
     public void afterTextChanged(Editable s){
     }
 
+    /**
+     * Progressive open: on the first update replace the editor
+     * text, and on each update append the text available from the
+     * reader.  Updates queued by a reader since cancelled, by the
+     * open of another file, are dropped.
+     */
+    protected void onProgressReader(Reference.Reader r){
+
+	EditText target = this.editor;
+	if (r != this.bgtask){
+
+	    LI("Dropping progress of cancelled reader.");
+	}
+	else if (null != target){
+
+	    if (!this.streaming){
+
+		this.streaming = true;
+
+		this.state = this.state.clear(State.EMPTY);
+
+		this.state = this.state.push(State.POST);
+
+		target.setText("",BufferType.EDITABLE);
+
+		this.state = this.state.pop(State.POST);
+
+		setTitle(this.reference.getFilename());
+
+		proceed();
+	    }
+
+	    this.append(r,target.getText());
+	}
+    }
+    /**
+     * Append streamed text in the POST state, so that the text is
+     * not marked dirty by the append, but remains dirty from a user
+     * edit.
+     * 
+     * @return Number of characters appended
+     */
+    private int append(Reference.Reader r, Editable text){
+
+	final boolean dirty = this.state.is(State.DIRTY);
+
+	this.state = this.state.push(State.POST);
+	try {
+	    return r.drainTo(text);
+	}
+	catch (java.io.IOException exc){
+
+	    LE(exc,"Error appending '%s'.",this.reference.toString());
+
+	    return 0;
+	}
+	finally {
+	    this.state = this.state.pop(State.POST);
+
+	    if (dirty){
+
+		this.state = this.state.push(State.DIRTY);
+	    }
+	}
+    }
+
     protected void onPostReader(Reference.Post.Read r){
 
+	this.streaming = false;
+
 	this.state = this.state.clear(State.EMPTY);
 
-	String result = r.text;
+	CharSequence result = r.text;
 
 	//LI("onPostReader [%s]",this.state);
 
@@ -452,11 +1157,55 @@ public abstract class Syntelos
 
 	    this.state = this.state.push(State.CLEAN);
 	}
+
+	if (SUCCESS == r.status){
+
+	    this.loaded = true;
+
+	    proceed();
+	}
+	else {
+	    opened(false);
+	}
+	invalidateOptionsMenu();
+    }
+
+    /**
+     * Progressive open: append the remaining text, without replacing
+     * the editor text.  The reader has waited for the ring to drain,
+     * so that little or none remains.  Edits made while streaming
+     * have been journaled with their offsets in the streamed prefix,
+     * which are the same in the whole text.
+     */
+    protected void onPostStream(Reference.Reader r){
+
+	EditText target = this.editor;
+	if (null != target){
+
+	    if (!this.streaming){
+
+		this.onProgressReader(r);
+	    }
+
+	    this.append(r,target.getText());
+
+	    target.requestFocus();
+	}
+	this.streaming = false;
+
+	this.loaded = true;
+
+	proceed();
+
 	invalidateOptionsMenu();
     }
 
     protected void onPostWriter(Reference.Post.Write w){
 
+	closeView();
+
+	unlock();
+
 	switch(w.status){
 
 	case SUCCESS:
@@ -469,6 +1218,8 @@ public abstract class Syntelos
 
 	    setTitle(this.reference.getFilename());
 
+	    resetJournal();
+
 	    invalidateOptionsMenu();
 	    break;
 
@@ -512,6 +1263,11 @@ public abstract class Syntelos
     protected void onPause(){
 	super.onPause();
 
+	this.handler.removeCallbacks(this.committer);
+	this.committing = false;
+
+	commitJournal();
+
 	//LI("onPause [%s]",this.state);
     }
 
@@ -526,6 +1282,8 @@ public abstract class Syntelos
     protected void onDestroy(){
 	super.onDestroy();
 
+	closeJournal();
+
 	//LI("onDestroy [%s]",this.state);
     }
 
@@ -616,6 +1374,9 @@ public abstract class Syntelos
 	case R.id.eval:
 	    eval();
 	    break;
+	case R.id.hex:
+	    view();
+	    break;
 	}
         return true;
     }
@@ -481,6 +481,201 @@ public class Bbuf
             throw new java.io.IOException("Unable to read eight bytes.");
     }
 
+    /**
+     * Read four bytes into an int in the byte order.
+     *
+     * @exception java.io.IOException If four bytes are not available.
+     */
+    public int read4( java.nio.ByteOrder order) throws java.io.IOException {
+
+        if ( 4 <= available()){
+
+            int re = Integer(buf,rc,order);
+
+            rc += 4;
+
+            return re;
+        }
+        else
+            throw new java.io.IOException("Unable to read four bytes.");
+    }
+    /**
+     * Read eight bytes into a long in the byte order.
+     *
+     * @exception java.io.IOException If eight bytes are not available.
+     */
+    public long read8( java.nio.ByteOrder order) throws java.io.IOException {
+
+        if ( 8 <= available()){
+
+            long re = Long(buf,rc,order);
+
+            rc += 8;
+
+            return re;
+        }
+        else
+            throw new java.io.IOException("Unable to read eight bytes.");
+    }
+    /**
+     * Bulk read of integers in network byte order (big endian).
+     *
+     * @exception java.io.IOException If the bytes are not available.
+     */
+    public void readInts( int[] dst, int off, int len) throws java.io.IOException {
+
+        this.readInts(dst,off,len,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Bulk read of integers in the byte order.
+     *
+     * @exception java.io.IOException If the bytes are not available.
+     */
+    public void readInts( int[] dst, int off, int len, java.nio.ByteOrder order) throws java.io.IOException {
+
+        int many = (len<<2);
+
+        if ( many <= available()){
+
+            Integers(buf,rc,order,dst,off,len);
+
+            rc += many;
+        }
+        else
+            throw new java.io.IOException("Unable to read "+many+" bytes.");
+    }
+    /**
+     * Bulk read of longs in network byte order (big endian).
+     *
+     * @exception java.io.IOException If the bytes are not available.
+     */
+    public void readLongs( long[] dst, int off, int len) throws java.io.IOException {
+
+        this.readLongs(dst,off,len,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Bulk read of longs in the byte order.
+     *
+     * @exception java.io.IOException If the bytes are not available.
+     */
+    public void readLongs( long[] dst, int off, int len, java.nio.ByteOrder order) throws java.io.IOException {
+
+        int many = (len<<3);
+
+        if ( many <= available()){
+
+            Longs(buf,rc,order,dst,off,len);
+
+            rc += many;
+        }
+        else
+            throw new java.io.IOException("Unable to read "+many+" bytes.");
+    }
+
+    /**
+     * Read an unsigned LEB128 varint of as many as five bytes.
+     *
+     * @exception java.io.IOException If the varint is truncated or
+     * too long.
+     */
+    public int readVarint() throws java.io.IOException {
+
+        int p = rc, z = wc, re = 0;
+
+        for ( int sh = 0; sh < 35 && p < z; sh += 7){
+
+            int b = buf[p++];
+
+            re |= (b & 0x7f)<<sh;
+
+            if ( 0 <= b){
+                rc = p;
+                return re;
+            }
+        }
+        throw new java.io.IOException("Unable to read varint.");
+    }
+    /**
+     * Read an unsigned LEB128 varint of as many as ten bytes.
+     *
+     * @exception java.io.IOException If the varint is truncated or
+     * too long.
+     */
+    public long readVarlong() throws java.io.IOException {
+
+        int p = rc, z = wc;
+        long re = 0L;
+
+        for ( int sh = 0; sh < 70 && p < z; sh += 7){
+
+            int b = buf[p++];
+
+            re |= (long)(b & 0x7f)<<sh;
+
+            if ( 0 <= b){
+                rc = p;
+                return re;
+            }
+        }
+        throw new java.io.IOException("Unable to read varint.");
+    }
+    /**
+     * Read a zig-zag signed varint.
+     */
+    public int readZigzag() throws java.io.IOException {
+
+        return Unzigzag(readVarint());
+    }
+    /**
+     * Read a zig-zag signed varint.
+     */
+    public long readZigzagLong() throws java.io.IOException {
+
+        return Unzigzag(readVarlong());
+    }
+    /**
+     * Bulk read of unsigned varints.
+     */
+    public void readVarints( int[] dst, int off, int len) throws java.io.IOException {
+
+        for ( int cc = off, end = (off+len); cc < end; cc++)
+
+            dst[cc] = readVarint();
+    }
+    /**
+     * Bulk read of unsigned varints.
+     */
+    public void readVarlongs( long[] dst, int off, int len) throws java.io.IOException {
+
+        for ( int cc = off, end = (off+len); cc < end; cc++)
+
+            dst[cc] = readVarlong();
+    }
+    /**
+     * Bulk read of ascending integers from varint deltas.
+     *
+     * @see #writeDeltas(int[],int,int)
+     */
+    public void readDeltas( int[] dst, int off, int len) throws java.io.IOException {
+
+        for ( int cc = off, end = (off+len), prev = 0; cc < end; cc++)
+
+            dst[cc] = (prev += readVarint());
+    }
+    /**
+     * Bulk read of ascending longs from varint deltas.
+     *
+     * @see #writeDeltas(long[],int,int)
+     */
+    public void readDeltas( long[] dst, int off, int len) throws java.io.IOException {
+
+        long prev = 0L;
+
+        for ( int cc = off, end = (off+len); cc < end; cc++)
+
+            dst[cc] = (prev += readVarlong());
+    }
+
     public String read_ascii( int len)
         throws java.io.IOException
     {
@@ -793,30 +988,210 @@ public class Bbuf
     public void write4 ( int[] ary){
         if ( null == ary)
             return ;
-        else {
+        else
+            write4(ary,0,ary.length,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    public void write8 ( long[] ary){
+        if ( null == ary)
+            return ;
+        else
+            write8(ary,0,ary.length,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Write 32 bits in the byte order.
+     */
+    public void write4 ( int b, java.nio.ByteOrder order){
 
-            int alen = ary.length;
+        this.writable(4);
 
-            for ( int cc = 0; cc < alen; cc++){
+        Integer(b,buf,wc,order);
+
+        wc += 4;
+    }
+    /**
+     * Write 64 bits in the byte order.
+     */
+    public void write8 ( long b, java.nio.ByteOrder order){
+
+        this.writable(8);
+
+        Long(b,buf,wc,order);
+
+        wc += 8;
+    }
+    /**
+     * Write the unsigned value as an LEB128 varint of as many as five
+     * bytes.
+     */
+    public void writeVarint ( int b){
+
+        this.writable(5);
+
+        wc = Varint(b,buf,wc);
+    }
+    /**
+     * Write the unsigned value as an LEB128 varint of as many as ten
+     * bytes.
+     */
+    public void writeVarlong ( long b){
+
+        this.writable(10);
+
+        wc = Varint(b,buf,wc);
+    }
+    /**
+     * Write the signed value as a zig-zag varint.
+     */
+    public void writeZigzag ( int b){
+
+        this.writeVarint(Zigzag(b));
+    }
+    /**
+     * Write the signed value as a zig-zag varint.
+     */
+    public void writeZigzag ( long b){
+
+        this.writeVarlong(Zigzag(b));
+    }
+    /**
+     * Bulk write of unsigned varints.
+     */
+    public void writeVarints ( int[] ary, int off, int len){
+        if (0 < len){
+
+            this.writable(len*5);
+
+            byte[] buf = this.buf;
+            int wc = this.wc;
+
+            for ( int cc = off, end = (off+len); cc < end; cc++)
+
+                wc = Varint(ary[cc],buf,wc);
+
+            this.wc = wc;
+        }
+    }
+    /**
+     * Bulk write of unsigned varints.
+     */
+    public void writeVarlongs ( long[] ary, int off, int len){
+        if (0 < len){
+
+            this.writable(len*10);
+
+            byte[] buf = this.buf;
+            int wc = this.wc;
+
+            for ( int cc = off, end = (off+len); cc < end; cc++)
+
+                wc = Varint(ary[cc],buf,wc);
+
+            this.wc = wc;
+        }
+    }
+    /**
+     * Bulk write of ascending (unsigned) integers as the varint
+     * deltas from zero and each other, as for offset tables.
+     *
+     * @exception java.lang.IllegalArgumentException The integers are
+     * not ascending, having written nothing.
+     */
+    public void writeDeltas ( int[] ary, int off, int len){
+        if (0 < len){
+
+            this.writable(len*5);
+
+            byte[] buf = this.buf;
+            int wc = this.wc;
+
+            for ( int cc = off, end = (off+len), prev = 0; cc < end; cc++){
+
+                int next = ary[cc];
+
+                if ( 0 > Integer.compare((next ^ Integer.MIN_VALUE),(prev ^ Integer.MIN_VALUE))){
+
+                    throw new IllegalArgumentException("Not ascending at "+cc);
+                }
+                else {
+                    wc = Varint((next-prev),buf,wc);
+                    prev = next;
+                }
+            }
+            this.wc = wc;
+        }
+    }
+    /**
+     * Bulk write of ascending (unsigned) longs as the varint deltas
+     * from zero and each other.
+     *
+     * @exception java.lang.IllegalArgumentException The longs are
+     * not ascending, having written nothing.
+     */
+    public void writeDeltas ( long[] ary, int off, int len){
+        if (0 < len){
+
+            this.writable(len*10);
+
+            byte[] buf = this.buf;
+            int wc = this.wc;
+            long prev = 0L;
+
+            for ( int cc = off, end = (off+len); cc < end; cc++){
 
-                write4(ary[cc]);
+                long next = ary[cc];
+
+                if ( 0 > java.lang.Long.compare((next ^ java.lang.Long.MIN_VALUE),(prev ^ java.lang.Long.MIN_VALUE))){
+
+                    throw new IllegalArgumentException("Not ascending at "+cc);
+                }
+                else {
+                    wc = Varint((next-prev),buf,wc);
+                    prev = next;
+                }
             }
+            this.wc = wc;
+        }
+    }
+    /**
+     * Bulk write of integers in network byte order (big endian).
+     */
+    public void write4 ( int[] ary, int off, int len){
 
-            return ;
+        write4(ary,off,len,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Bulk write of integers in the byte order.
+     */
+    public void write4 ( int[] ary, int off, int len, java.nio.ByteOrder order){
+        if (0 < len){
+            int many = (len<<2);
+
+            this.writable(many);
+
+            Integers(ary,off,len,order,buf,wc);
+
+            wc += many;
         }
     }
-    public void write8 ( long[] ary){
-        if ( null == ary)
-            return ;
-        else {
+    /**
+     * Bulk write of longs in network byte order (big endian).
+     */
+    public void write8 ( long[] ary, int off, int len){
 
-            int alen = ary.length;
+        write8(ary,off,len,java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    /**
+     * Bulk write of longs in the byte order.
+     */
+    public void write8 ( long[] ary, int off, int len, java.nio.ByteOrder order){
+        if (0 < len){
+            int many = (len<<3);
 
-            for ( int cc = 0; cc < alen; cc++)
+            this.writable(many);
 
-                write8(ary[cc]);
+            Longs(ary,off,len,order,buf,wc);
 
-            return ;
+            wc += many;
         }
     }
     /**
@@ -1356,9 +1731,11 @@ public class Bbuf
 
             byte[] bb = buf;
 
-            for ( int cc = c0; cc < length; cc++){
+            for ( int cc = c0, end = (c0+length), many; cc < end; cc += many){
+
+                many = Math.min(COPY,(end-cc));
 
-                out.write(bb[cc]);
+                out.write(bb,cc,many);
             }
 
             return length;
@@ -1417,37 +1794,94 @@ public class Bbuf
     }
 
     /**
-     * Read the stream contents into memory.
+     * Read the stream contents directly into the internal buffer.
      * 
      * @param in Source stream.
      */
     public Bbuf readFrom(java.io.InputStream in) throws java.io.IOException {
-        byte[] iobuf = new byte[COPY];
         int count;
-        while (0 < (count = in.read(iobuf,0,COPY)))
-            this.write(iobuf,0,count);
+        do {
+            this.writable(COPY);
+
+            count = in.read(this.buf,this.wc,(this.buf.length-this.wc));
+
+            if (0 < count)
+                this.wc += count;
+        }
+        while (0 <= count);
+
         return this;
     }
 
     /**
-     * Read the stream contents into memory.
+     * Read the stream contents directly into the internal buffer.
      * 
      * @param in Source stream.
      */
     public Bbuf readFrom(java.io.InputStream in, int many) throws java.io.IOException {
-        byte[] iob = new byte[COPY];
-        for ( int cc = 0, count; cc < many;){
-            count = Math.min((many - cc),COPY);
-            int re = in.read(iob,0,count);
-            if (0 < re){
-                this.write(iob,0,re);
-                cc += re;
+        if (0 < many){
+            this.writable(many);
+
+            for ( int cc = 0; cc < many;){
+
+                int re = in.read(this.buf,this.wc,(many - cc));
+                if (0 < re){
+                    this.wc += re;
+                    cc += re;
+                }
+                else
+                    return this;
             }
-            else
-                return this;
         }
         return this;
     }
+    /**
+     * Read the channel contents directly into the internal buffer
+     * until end of stream.
+     * 
+     * @param in Source channel, not closed.
+     */
+    public Bbuf readFrom(java.nio.channels.ReadableByteChannel in) throws java.io.IOException {
+        int count;
+        do {
+            this.writable(COPY);
+
+            java.nio.ByteBuffer dst = java.nio.ByteBuffer.wrap(this.buf,this.wc,(this.buf.length-this.wc));
+
+            count = in.read(dst);
+
+            if (0 < count)
+                this.wc += count;
+        }
+        while (0 <= count);
+
+        return this;
+    }
+    /**
+     * Read as many as the requested number of bytes from the channel
+     * directly into the internal buffer.
+     * 
+     * @param in Source channel, not closed.
+     *
+     * @return Number of bytes read
+     */
+    public int readFrom(java.nio.channels.ReadableByteChannel in, int many) throws java.io.IOException {
+        if (0 < many){
+            this.writable(many);
+
+            java.nio.ByteBuffer dst = java.nio.ByteBuffer.wrap(this.buf,this.wc,many);
+
+            while (dst.hasRemaining() && 0 <= in.read(dst));
+
+            int count = (dst.position()-this.wc);
+
+            this.wc += count;
+
+            return count;
+        }
+        else
+            return 0;
+    }
 
     /**
      * Read the stream contents into memory.
@@ -1471,17 +1905,34 @@ public class Bbuf
      */
 
     /**
-     * Write the buffer contents to the stream.
+     * Write the buffer contents to the stream directly from the
+     * internal buffer, consuming them.
      * 
      * @param out Destination stream.
      */
     public int writeTo(java.io.OutputStream out) throws java.io.IOException {
-        int total = 0;
-        byte[] iobuf = new byte[COPY];
-        int count;
-        while(0 < (count = this.read(iobuf,0,COPY))){
-            out.write(iobuf,0,count);
-            total += count;
+        int total = this.available();
+        if (0 < total){
+
+            out.write(this.buf,this.rc,total);
+
+            this.rc += total;
+        }
+        return total;
+    }
+    /**
+     * Write the buffer contents to the channel directly from the
+     * internal buffer, consuming them.
+     * 
+     * @param out Destination channel, not closed.
+     */
+    public int writeTo(java.nio.channels.WritableByteChannel out) throws java.io.IOException {
+        int total = this.available();
+        if (0 < total){
+
+            Chbuf.Drain(java.nio.ByteBuffer.wrap(this.buf,this.rc,total),out);
+
+            this.rc += total;
         }
         return total;
     }
@@ -1498,42 +1949,17 @@ public class Bbuf
 
             long filen = fi.length();
 
-            int buflen;
-
-            if (filen > Integer.MAX_VALUE)
+            if ((filen+this.wc) > Integer.MAX_VALUE)
 
                 throw new IllegalArgumentException("File is too large to read into a single buffer.");
             else {
-
-                buflen = (int)filen;
-
-                if ( 4096 < buflen)
-
-                    buflen = 4096;
-            }
-
-            java.io.FileInputStream in = new java.io.FileInputStream(fi);
-            try {
-                int read;
-
-                byte[] readbuf = new byte[buflen];
-
-                while (0 < filen){
-		
-                    read = in.read(readbuf,0,buflen);
-
-                    if (0 < read){
-
-                        this.write(readbuf,0,read);
-
-                        filen -= read;
-                    }
-                    else
-                        return this;
+                java.io.FileInputStream in = new java.io.FileInputStream(fi);
+                try {
+                    this.readFrom(in.getChannel(),(int)filen);
+                }
+                finally {
+                    in.close();
                 }
-            }
-            finally {
-                in.close();
             }
         }
         return this;
@@ -1613,7 +2039,7 @@ public class Bbuf
      */
     public void writeTo( java.io.File fi) throws java.io.IOException {
 
-        writeTo( toByteArray(), fi);
+        writeTo( this.buf, this.rc, this.available(), fi);
     }
 
     /**
@@ -1626,6 +2052,25 @@ public class Bbuf
      */
     public final static void writeTo( byte[] buf, java.io.File fi) throws java.io.IOException {
 
+        if ( null != buf)
+            writeTo( buf, 0, buf.length, fi);
+        else
+            writeTo( buf, 0, 0, fi);
+    }
+    /**
+     * Write buffer to file.  File's parent directory will be tested
+     * for existance and created if necessary.
+     * 
+     * @param buf Buffer (may be null when the length is zero).
+     *
+     * @param ofs Offset in buffer
+     *
+     * @param len Number of bytes to write
+     *
+     * @param fi Output file.
+     */
+    public final static void writeTo( byte[] buf, int ofs, int len, java.io.File fi) throws java.io.IOException {
+
         String p = fi.getParent();
 
         if ( null == p){
@@ -1639,16 +2084,96 @@ public class Bbuf
 
         java.io.FileOutputStream out = new java.io.FileOutputStream(fi);
         try {
-            if ( null != buf)
-                out.write(buf,0,buf.length);
+            if ( 0 < len)
+                Chbuf.Drain(java.nio.ByteBuffer.wrap(buf,ofs,len),out.getChannel());
         }
         finally {
             out.close();
         }
     }
+    /**
+     * File to file copy by channel transfer, which the platform may
+     * perform without copying through user space.
+     *
+     * @return Number of bytes copied
+     */
+    public final static long transfer( java.io.File src, java.io.File dst) throws java.io.IOException {
 
+        java.io.FileInputStream in = new java.io.FileInputStream(src);
+        try {
+            java.io.FileOutputStream out = new java.io.FileOutputStream(dst);
+            try {
+                java.nio.channels.FileChannel fc = in.getChannel();
 
+                return transfer(fc,0L,fc.size(),out.getChannel());
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+    /**
+     * Channel transfer from a file region to a channel, looping on
+     * partial transfers.  Neither channel is closed.
+     *
+     * @return Number of bytes copied, fewer than requested when the
+     * file is shorter
+     */
+    public final static long transfer( java.nio.channels.FileChannel src, long position, long count, java.nio.channels.WritableByteChannel dst) throws java.io.IOException {
+        long total = 0L;
+        while (total < count){
 
+            long many = src.transferTo((position+total),(count-total),dst);
+
+            if (0L < many)
+                total += many;
+            else
+                break;
+        }
+        return total;
+    }
+    /**
+     * Channel transfer from a channel into a file region, looping on
+     * partial transfers.  Neither channel is closed.
+     *
+     * @return Number of bytes copied, fewer than requested at the end
+     * of the source
+     */
+    public final static long transfer( java.nio.channels.ReadableByteChannel src, java.nio.channels.FileChannel dst, long position, long count) throws java.io.IOException {
+        long total = 0L;
+        while (total < count){
+
+            long many = dst.transferFrom(src,(position+total),(count-total));
+
+            if (0L < many)
+                total += many;
+            else
+                break;
+        }
+        return total;
+    }
+
+
+
+
+    /**
+     * Grow the internal buffer, geometrically, to accomodate at least
+     * the requested number of bytes following the write position.
+     */
+    private void writable( int many){
+
+        int need = (this.wc+many);
+
+        if ( need > this.buf.length){
+
+            int grow = Math.max(this.gf,this.buf.length);
+
+            this.buf = growbuf(this.buf,(Math.max(need,(this.buf.length+grow))-1));
+        }
+    }
 
     /**
      * Array stretch function.
@@ -1880,14 +2405,18 @@ public class Bbuf
         throws java.io.IOException
     {
         int count = 0, read;
-        byte[] iobuf = new byte[COPY];
-
-        while (0 < (read = in.read(iobuf,0,COPY))){
+        byte[] iobuf = Pool.Bytes(COPY);
+        try {
+            while (0 < (read = in.read(iobuf,0,COPY))){
 
-            out.write(iobuf,0,read);
+                out.write(iobuf,0,read);
 
-            count += read;
+                count += read;
+            }
+            return count;
+        }
+        finally {
+            Pool.Release(iobuf);
         }
-        return count;
     }
 }
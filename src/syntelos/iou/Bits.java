@@ -20,6 +20,9 @@
 
 package syntelos.iou;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * <p> Fast hexidecimal numeric coding correct (as to recode itself)
  * across all integer and long values. </p>
@@ -35,15 +38,16 @@ public abstract class Bits
         return Long(buf,0);
     }
     /**
-     * For eight bytes in big- endian order, return their integer
-     * value.
+     * For eight bytes in big- endian order from the offset, return
+     * their integer value.  Fewer bytes at the end of the buffer are
+     * the high order bytes of the value.
      */
     public final static long Long( byte[] buf, int ofs){
         long ret = 0, reg;
 
         int len = buf.length;
 
-        if ( 8 < len) len = 8;
+        if ( (ofs+8) < len) len = (ofs+8);
 
         for ( int cc = ofs, sh = 56; cc < len; cc++, sh -= 8){
 
@@ -81,15 +85,16 @@ public abstract class Bits
         return Integer(buf,0);
     }
     /**
-     * For eight bytes in big- endian order, return their integer
-     * value.
+     * For four bytes in big- endian order from the offset, return
+     * their integer value.  Fewer bytes at the end of the buffer are
+     * the high order bytes of the value.
      */
     public final static int Integer( byte[] buf, int ofs){
         int ret = 0, reg;
 
         int len = buf.length;
 
-        if ( 4 < len) len = 4;
+        if ( (ofs+4) < len) len = (ofs+4);
 
         for ( int cc = ofs, sh = 24; cc < len; cc++, sh -= 8){
 
@@ -120,6 +125,204 @@ public abstract class Bits
         return ret;
     }
 
+    /**
+     * Two bytes in the byte order from the offset.
+     */
+    public final static short Short( byte[] buf, int ofs, ByteOrder order){
+        int a = (buf[ofs]&0xff), b = (buf[ofs+1]&0xff);
+
+        if (ByteOrder.BIG_ENDIAN == order)
+            return (short)((a<<8)|b);
+        else
+            return (short)((b<<8)|a);
+    }
+    /**
+     * Four bytes in the byte order from the offset.
+     */
+    public final static int Integer( byte[] buf, int ofs, ByteOrder order){
+        int a = (buf[ofs]&0xff), b = (buf[ofs+1]&0xff),
+            c = (buf[ofs+2]&0xff), d = (buf[ofs+3]&0xff);
+
+        if (ByteOrder.BIG_ENDIAN == order)
+            return ((a<<24)|(b<<16)|(c<<8)|d);
+        else
+            return ((d<<24)|(c<<16)|(b<<8)|a);
+    }
+    /**
+     * Eight bytes in the byte order from the offset.
+     */
+    public final static long Long( byte[] buf, int ofs, ByteOrder order){
+        long hi, lo;
+
+        if (ByteOrder.BIG_ENDIAN == order){
+            hi = Integer(buf,ofs,order);
+            lo = Integer(buf,(ofs+4),order);
+        }
+        else {
+            lo = Integer(buf,ofs,order);
+            hi = Integer(buf,(ofs+4),order);
+        }
+        return ((hi<<32)|(lo & 0xffffffffL));
+    }
+    /**
+     * Write two bytes in the byte order at the offset.
+     */
+    public final static void Short( int num, byte[] dst, int ofs, ByteOrder order){
+        if (ByteOrder.BIG_ENDIAN == order){
+            dst[ofs  ] = (byte)(num>>>8);
+            dst[ofs+1] = (byte)num;
+        }
+        else {
+            dst[ofs  ] = (byte)num;
+            dst[ofs+1] = (byte)(num>>>8);
+        }
+    }
+    /**
+     * Write four bytes in the byte order at the offset.
+     */
+    public final static void Integer( int num, byte[] dst, int ofs, ByteOrder order){
+        if (ByteOrder.BIG_ENDIAN == order){
+            dst[ofs  ] = (byte)(num>>>24);
+            dst[ofs+1] = (byte)(num>>>16);
+            dst[ofs+2] = (byte)(num>>> 8);
+            dst[ofs+3] = (byte)num;
+        }
+        else {
+            dst[ofs  ] = (byte)num;
+            dst[ofs+1] = (byte)(num>>> 8);
+            dst[ofs+2] = (byte)(num>>>16);
+            dst[ofs+3] = (byte)(num>>>24);
+        }
+    }
+    /**
+     * Write eight bytes in the byte order at the offset.
+     */
+    public final static void Long( long num, byte[] dst, int ofs, ByteOrder order){
+        if (ByteOrder.BIG_ENDIAN == order){
+            Integer((int)(num>>>32),dst,ofs,order);
+            Integer((int)num,dst,(ofs+4),order);
+        }
+        else {
+            Integer((int)num,dst,ofs,order);
+            Integer((int)(num>>>32),dst,(ofs+4),order);
+        }
+    }
+    /**
+     * Bulk decode of integers in the byte order, through a buffer
+     * view.
+     *
+     * @param src Source bytes from <code>`ofs'</code>, four per integer
+     *
+     * @param dst Target integers from <code>`dst_ofs'</code>
+     *
+     * @param len Number of integers
+     */
+    public final static void Integers( byte[] src, int ofs, ByteOrder order, int[] dst, int dst_ofs, int len){
+        if (0 < len)
+            ByteBuffer.wrap(src,ofs,(len<<2)).order(order).asIntBuffer().get(dst,dst_ofs,len);
+    }
+    /**
+     * Bulk encode of integers in the byte order, through a buffer
+     * view.
+     *
+     * @param src Source integers from <code>`ofs'</code>
+     *
+     * @param len Number of integers
+     *
+     * @param dst Target bytes from <code>`dst_ofs'</code>, four per
+     * integer
+     */
+    public final static void Integers( int[] src, int ofs, int len, ByteOrder order, byte[] dst, int dst_ofs){
+        if (0 < len)
+            ByteBuffer.wrap(dst,dst_ofs,(len<<2)).order(order).asIntBuffer().put(src,ofs,len);
+    }
+    /**
+     * Bulk decode of longs in the byte order, through a buffer view.
+     *
+     * @param src Source bytes from <code>`ofs'</code>, eight per long
+     *
+     * @param dst Target longs from <code>`dst_ofs'</code>
+     *
+     * @param len Number of longs
+     */
+    public final static void Longs( byte[] src, int ofs, ByteOrder order, long[] dst, int dst_ofs, int len){
+        if (0 < len)
+            ByteBuffer.wrap(src,ofs,(len<<3)).order(order).asLongBuffer().get(dst,dst_ofs,len);
+    }
+    /**
+     * Bulk encode of longs in the byte order, through a buffer view.
+     *
+     * @param src Source longs from <code>`ofs'</code>
+     *
+     * @param len Number of longs
+     *
+     * @param dst Target bytes from <code>`dst_ofs'</code>, eight per
+     * long
+     */
+    public final static void Longs( long[] src, int ofs, int len, ByteOrder order, byte[] dst, int dst_ofs){
+        if (0 < len)
+            ByteBuffer.wrap(dst,dst_ofs,(len<<3)).order(order).asLongBuffer().put(src,ofs,len);
+    }
+
+    /**
+     * Zig-zag map of a signed integer to an unsigned one, so that
+     * small negative numbers have short varints.
+     */
+    public final static int Zigzag( int num){
+        return ((num<<1)^(num>>31));
+    }
+    public final static long Zigzag( long num){
+        return ((num<<1)^(num>>63));
+    }
+    public final static int Unzigzag( int num){
+        return ((num>>>1)^(-(num & 1)));
+    }
+    public final static long Unzigzag( long num){
+        return ((num>>>1)^(-(num & 1L)));
+    }
+    /**
+     * @return Number of bytes in the LEB128 varint for the unsigned
+     * value, one to five
+     */
+    public final static int VarintSize( int num){
+        return (1+((31-Integer.numberOfLeadingZeros(num|1))/7));
+    }
+    /**
+     * @return Number of bytes in the LEB128 varint for the unsigned
+     * value, one to ten
+     */
+    public final static int VarintSize( long num){
+        return (1+((63-java.lang.Long.numberOfLeadingZeros(num|1L))/7));
+    }
+    /**
+     * Write the unsigned value as an LEB128 varint.  The target must
+     * have room for {@link #VarintSize(int)} bytes.
+     *
+     * @return Offset following the varint
+     */
+    public final static int Varint( int num, byte[] dst, int ofs){
+        while (0 != (num & ~0x7f)){
+            dst[ofs++] = (byte)((num & 0x7f)|0x80);
+            num >>>= 7;
+        }
+        dst[ofs++] = (byte)num;
+        return ofs;
+    }
+    /**
+     * Write the unsigned value as an LEB128 varint.  The target must
+     * have room for {@link #VarintSize(long)} bytes.
+     *
+     * @return Offset following the varint
+     */
+    public final static int Varint( long num, byte[] dst, int ofs){
+        while (0L != (num & ~0x7fL)){
+            dst[ofs++] = (byte)((num & 0x7f)|0x80);
+            num >>>= 7;
+        }
+        dst[ofs++] = (byte)num;
+        return ofs;
+    }
+
     public final static byte[] Float(float value){
         return Integer(java.lang.Float.floatToIntBits(value));
     }
@@ -0,0 +1,203 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 2018, John Pritchard, Syntelos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package syntelos.iou;
+
+import java.nio.CharBuffer;
+
+/**
+ * Compiled character class for {@link Reader} scanning.
+ *
+ * <p> Membership is a table lookup: a 128 entry table for ASCII, and
+ * a bit set over the basic multilingual plane, allocated only for
+ * classes with members beyond ASCII. </p>
+ *
+ * <pre>
+ * CharClass ident = CharClass.Union(CharClass.ALPHA,CharClass.DIGIT,CharClass.Of("_"));
+ * </pre>
+ *
+ * <h3>MT Safe</h3>
+ *
+ * <p> Instances are immutable. </p>
+ */
+public final class CharClass {
+
+    public final static CharClass DIGIT = Range('0','9');
+
+    public final static CharClass HEX = Union(DIGIT,Range('a','f'),Range('A','F'));
+
+    public final static CharClass ALPHA = Union(Range('a','z'),Range('A','Z'));
+
+    public final static CharClass SPACE = Of(" \t\r\n\f");
+
+    public final static CharClass BLANK = Of(" \t");
+
+
+    /**
+     * @param cc Member characters
+     */
+    public final static CharClass Of(char[] cc){
+	boolean[] ascii = new boolean[0x80];
+	long[] bmp = null;
+	for (char c : cc){
+	    if (0x80 > c)
+		ascii[c] = true;
+	    else {
+		if (null == bmp)
+		    bmp = new long[0x400];
+
+		bmp[c>>>6] |= (1L<<c);
+	    }
+	}
+	return new CharClass(ascii,bmp);
+    }
+    public final static CharClass Of(CharSequence cc){
+	char[] cary = new char[cc.length()];
+	for (int cx = 0; cx < cary.length; cx++){
+	    cary[cx] = cc.charAt(cx);
+	}
+	return Of(cary);
+    }
+    /**
+     * @param from First member (inclusive)
+     * @param to Last member (inclusive)
+     */
+    public final static CharClass Range(char from, char to){
+	if (from <= to){
+	    boolean[] ascii = new boolean[0x80];
+	    long[] bmp = null;
+	    for (int c = from; c <= to; c++){
+		if (0x80 > c)
+		    ascii[c] = true;
+		else {
+		    if (null == bmp)
+			bmp = new long[0x400];
+
+		    bmp[c>>>6] |= (1L<<c);
+		}
+	    }
+	    return new CharClass(ascii,bmp);
+	}
+	else {
+	    throw new IllegalArgumentException(String.format("Range %04X > %04X",(int)from,(int)to));
+	}
+    }
+    public final static CharClass Union(CharClass... list){
+	boolean[] ascii = new boolean[0x80];
+	long[] bmp = null;
+	for (CharClass cc : list){
+	    for (int c = 0; c < 0x80; c++){
+		ascii[c] |= cc.ascii[c];
+	    }
+	    if (null != cc.bmp){
+		if (null == bmp)
+		    bmp = new long[0x400];
+
+		for (int w = 0; w < 0x400; w++){
+		    bmp[w] |= cc.bmp[w];
+		}
+	    }
+	}
+	return new CharClass(ascii,bmp);
+    }
+
+
+    private final boolean[] ascii;
+
+    private final long[] bmp;
+
+
+    private CharClass(boolean[] ascii, long[] bmp){
+	super();
+	this.ascii = ascii;
+	this.bmp = bmp;
+    }
+
+
+    public boolean contains(char c){
+	if (0x80 > c)
+	    return this.ascii[c];
+	else
+	    return (null != this.bmp && 0L != (this.bmp[c>>>6] & (1L<<c)));
+    }
+    /**
+     * @return Complement within the basic multilingual plane
+     */
+    public CharClass not(){
+	boolean[] ascii = new boolean[0x80];
+	for (int c = 0; c < 0x80; c++){
+	    ascii[c] = (!this.ascii[c]);
+	}
+	long[] bmp = new long[0x400];
+	if (null != this.bmp){
+	    for (int w = 0; w < 0x400; w++){
+		bmp[w] = ~this.bmp[w];
+	    }
+	}
+	else {
+	    java.util.Arrays.fill(bmp,-1L);
+	}
+	bmp[0] = 0L;
+	bmp[1] = 0L;
+	return new CharClass(ascii,bmp);
+    }
+    /**
+     * @param start Absolute index (inclusive)
+     * @param end Absolute index (exclusive)
+     *
+     * @return Absolute index of the first character from
+     * <code>`start'</code> not in this class, or <code>`end'</code>
+     */
+    public int span(CharBuffer src, int start, int end){
+	if (src.hasArray()){
+	    final char[] ary = src.array();
+	    final int base = src.arrayOffset();
+	    final boolean[] ascii = this.ascii;
+	    final long[] bmp = this.bmp;
+	    int p = start;
+	    while (p < end){
+		char c = ary[base+p];
+		if (0x80 > c){
+		    if (!ascii[c])
+			break;
+		}
+		else if (null == bmp || 0L == (bmp[c>>>6] & (1L<<c)))
+		    break;
+
+		p += 1;
+	    }
+	    return p;
+	}
+	else {
+	    int p = start;
+	    while (p < end && this.contains(src.get(p))){
+		p += 1;
+	    }
+	    return p;
+	}
+    }
+    /**
+     * @see #span(java.nio.CharBuffer,int,int)
+     */
+    public int span(CharSequence src, int start, int end){
+	int p = start;
+	while (p < end && this.contains(src.charAt(p))){
+	    p += 1;
+	}
+	return p;
+    }
+}
@@ -2255,6 +2255,40 @@ public class Chbuf
             return Integer.parseInt(s,10);
     }
 
+    /**
+     * Accept hex, octal and decimal numbers as for {@link
+     * #decode_long(java.lang.String)}, from the whole range, without
+     * an intermediate string.
+     */
+    public final static long decode_long ( char[] s, int ofs, int len) throws NumberFormatException {
+
+        Numeric num = Numeric.Local();
+
+        long re = num.decodeLong(s,ofs,(ofs+len));
+
+        if ((ofs+len) == num.end())
+            return re;
+        else
+            throw new NumberFormatException("Trailing characters at "+num.end());
+    }
+
+    /**
+     * Accept hex, octal and decimal numbers as for {@link
+     * #decode_int(java.lang.String)}, from the whole range, without
+     * an intermediate string.
+     */
+    public final static int decode_int ( char[] s, int ofs, int len) throws NumberFormatException {
+
+        Numeric num = Numeric.Local();
+
+        int re = num.decodeInt(s,ofs,(ofs+len));
+
+        if ((ofs+len) == num.end())
+            return re;
+        else
+            throw new NumberFormatException("Trailing characters at "+num.end());
+    }
+
     /**
      * Return 64 characters in ASCII `1' or `0' representing input number.
      */
@@ -2543,7 +2577,8 @@ public class Chbuf
      */
     public final static Charset UTF8 = Charset.forName("UTF-8");
     /**
-     * Text reader
+     * Text reader streaming through a chunk buffer into a character
+     * buffer presized to the file length.
      */
     public final static CharBuffer read(File txt)
 	throws java.io.IOException
@@ -2556,14 +2591,57 @@ public class Chbuf
 	    FileInputStream fin = new FileInputStream(txt);
 	    try {
 		FileChannel fc = fin.getChannel();
+		try {
+		    return read(fc,txt_len);
+		}
+		finally {
+		    fc.close();
+		}
+	    }
+	    finally {
+		fin.close();
+	    }
+	}
+	else {
+	    throw new IllegalArgumentException(String.format("File '%s' too large.",txt.getName()));
+	}
+    }
+    /**
+     * Text reader decoding directly from a read only mapping of the
+     * file, so that the only heap copy is the decoded text.
+     */
+    public final static CharBuffer readMapped(File txt)
+	throws java.io.IOException
+    {
+	return read(map(txt));
+    }
+    /**
+     * Lazily decoded read only text view of a read only mapping of
+     * the file.
+     */
+    public final static Chmap view(File txt)
+	throws java.io.IOException
+    {
+	return new Chmap(map(txt));
+    }
+    /**
+     * Read only mapping of the file.
+     */
+    public final static java.nio.MappedByteBuffer map(File txt)
+	throws java.io.IOException
+    {
+	long txt_Len = txt.length();
+	if (txt_Len < Integer.MAX_VALUE){
 
-		ByteBuffer bb = ByteBuffer.allocate((int)txt_len);
-		{
-		    fc.read(bb);
+	    FileInputStream fin = new FileInputStream(txt);
+	    try {
+		FileChannel fc = fin.getChannel();
+		try {
+		    return fc.map(FileChannel.MapMode.READ_ONLY,0L,txt_Len);
+		}
+		finally {
 		    fc.close();
-		    bb.rewind();
 		}
-		return read(bb);
 	    }
 	    finally {
 		fin.close();
@@ -2588,16 +2666,193 @@ public class Chbuf
 	return cb;
     }
     /**
-     * Text writer
+     * Streaming text reader decoding {@link #CHUNK} sized blocks
+     * from the channel until its end.  Multi-byte sequences split
+     * across blocks are carried into the following block.
+     *
+     * @param in Source channel, not closed
+     *
+     * @param size Initial capacity of the result, for example the
+     * byte length of the source, which is an upper bound on its
+     * character length
+     *
+     * @return Decoded text from position zero to limit
+     */
+    public final static CharBuffer read(java.nio.channels.ReadableByteChannel in, int size)
+	throws java.io.IOException
+    {
+	CharBuffer out = CharBuffer.allocate(Math.max(size,0x10));
+
+	Coder coder = Coder.Acquire();
+	try {
+	    CharsetDecoder dec = coder.dec;
+	    ByteBuffer bb = coder.io;
+
+	    dec.reset();
+	    bb.clear();
+
+	    boolean eof = false;
+	    while (true){
+		if (!eof && -1 == in.read(bb))
+		    eof = true;
+
+		bb.flip();
+
+		java.nio.charset.CoderResult cr = dec.decode(bb,out,eof);
+
+		bb.compact();
+
+		if (cr.isOverflow())
+		    out = Grow(out);
+		else if (cr.isError())
+		    cr.throwException();
+		else if (eof)
+		    break;
+	    }
+	    while (dec.flush(out).isOverflow()){
+
+		out = Grow(out);
+	    }
+	}
+	finally {
+	    Coder.Release(coder);
+	}
+	out.flip();
+	return out;
+    }
+    /**
+     * Streaming text reader decoding {@link #CHUNK} sized blocks
+     * from the channel until its end, and appending each decoded
+     * block to the target.  Memory use is bounded by the chunk
+     * buffers.
+     *
+     * @param in Source channel, not closed
+     *
+     * @param out Target
+     *
+     * @return Number of characters appended
+     */
+    public final static long read(java.nio.channels.ReadableByteChannel in, Appendable out)
+	throws java.io.IOException
+    {
+	long total = 0L;
+
+	Coder coder = Coder.Acquire();
+	try {
+	    CharsetDecoder dec = coder.dec;
+	    ByteBuffer bb = coder.io;
+	    CharBuffer cb = coder.text;
+
+	    dec.reset();
+	    bb.clear();
+	    cb.clear();
+
+	    boolean eof = false;
+	    while (true){
+		if (!eof && -1 == in.read(bb))
+		    eof = true;
+
+		bb.flip();
+
+		java.nio.charset.CoderResult cr = dec.decode(bb,cb,eof);
+
+		bb.compact();
+
+		if (cr.isError())
+		    cr.throwException();
+		else {
+		    cb.flip();
+		    total += cb.remaining();
+		    out.append(cb);
+		    cb.clear();
+
+		    if (eof && cr.isUnderflow())
+			break;
+		}
+	    }
+	    while (true){
+		java.nio.charset.CoderResult cr = dec.flush(cb);
+
+		cb.flip();
+		total += cb.remaining();
+		out.append(cb);
+		cb.clear();
+
+		if (cr.isUnderflow())
+		    break;
+	    }
+	}
+	finally {
+	    Coder.Release(coder);
+	}
+	return total;
+    }
+    /**
+     * Text writer streaming to the channel, which is closed.
      */
     public final static void write(CharBuffer cb, FileChannel fc)
 	throws java.io.IOException
     {
-	ByteBuffer bb = write(cb);
-	{
-	    fc.write(bb);
+	try {
+	    write(cb,(java.nio.channels.WritableByteChannel)fc);
+	}
+	finally {
+	    fc.close();
 	}
-	fc.close();
+    }
+    /**
+     * Streaming text writer encoding {@link #CHUNK} sized blocks
+     * from the text, and writing each block completely to the
+     * channel.
+     *
+     * @param cb Source text from position to limit, consumed
+     *
+     * @param out Target channel, not closed
+     *
+     * @return Number of bytes written
+     */
+    public final static long write(CharBuffer cb, java.nio.channels.WritableByteChannel out)
+	throws java.io.IOException
+    {
+	long total = 0L;
+
+	Coder coder = Coder.Acquire();
+	try {
+	    CharsetEncoder enc = coder.enc;
+	    ByteBuffer bb = coder.io;
+
+	    enc.reset();
+	    bb.clear();
+
+	    while (true){
+		java.nio.charset.CoderResult cr = enc.encode(cb,bb,true);
+
+		if (cr.isError())
+		    cr.throwException();
+		else {
+		    bb.flip();
+		    total += Drain(bb,out);
+		    bb.clear();
+
+		    if (cr.isUnderflow())
+			break;
+		}
+	    }
+	    while (true){
+		java.nio.charset.CoderResult cr = enc.flush(bb);
+
+		bb.flip();
+		total += Drain(bb,out);
+		bb.clear();
+
+		if (cr.isUnderflow())
+		    break;
+	    }
+	}
+	finally {
+	    Coder.Release(coder);
+	}
+	return total;
     }
     /**
      * Text writer
@@ -2613,5 +2868,81 @@ public class Chbuf
 
 	return bb;
     }
+    /**
+     * Write the buffer completely, looping on channels that accept
+     * partial writes.
+     *
+     * @return Number of bytes written
+     */
+    public final static int Drain(ByteBuffer bb, java.nio.channels.WritableByteChannel out)
+	throws java.io.IOException
+    {
+	int total = 0;
+	while (bb.hasRemaining()){
+
+	    total += out.write(bb);
+	}
+	return total;
+    }
+    /**
+     * Streaming chunk size.
+     */
+    public final static int CHUNK = 0x10000;//(64K)
+
+    private final static CharBuffer Grow(CharBuffer cb){
+
+	CharBuffer copier = CharBuffer.allocate(Math.max((cb.capacity()<<1),CHUNK));
+
+	cb.flip();
+
+	copier.put(cb);
+
+	return copier;
+    }
+    /**
+     * Reused UTF-8 coders and pooled chunk buffers, cached one per
+     * thread.
+     */
+    private final static class Coder {
+
+	private final static ThreadLocal<Coder> Cache = new ThreadLocal<Coder>();
+
+	final CharsetDecoder dec = UTF8.newDecoder();
+
+	final CharsetEncoder enc = UTF8.newEncoder();
+
+	final ByteBuffer io = Pool.Direct(CHUNK);
 
+	final char[] text_ary = Pool.Chars(CHUNK);
+
+	final CharBuffer text = CharBuffer.wrap(text_ary,0,CHUNK);
+
+
+	/**
+	 * Take the cached instance, or create one when the cache is
+	 * empty (or in use by a nested call).
+	 */
+	static Coder Acquire(){
+	    Coder c = Cache.get();
+	    if (null != c){
+		Cache.set(null);
+		return c;
+	    }
+	    else {
+		return new Coder();
+	    }
+	}
+	/**
+	 * Cache the instance, or return the buffers of a nested
+	 * instance to the pool.
+	 */
+	static void Release(Coder c){
+	    if (null == Cache.get())
+		Cache.set(c);
+	    else {
+		Pool.Release(c.io);
+		Pool.Release(c.text_ary);
+	    }
+	}
+    }
 }
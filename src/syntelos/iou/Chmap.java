@@ -0,0 +1,267 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 2018, John Pritchard, Syntelos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package syntelos.iou;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p> Read only UTF-8 text view over a (mapped) byte buffer, decoded
+ * lazily in blocks. </p>
+ *
+ * <p> The byte buffer is divided into blocks of about {@link #BLOCK}
+ * bytes at UTF-8 sequence boundaries.  The character offset of each
+ * block is indexed as the view is scanned forward, and a few
+ * recently decoded blocks are cached.  Character access costs
+ * decoding the blocks up to the character, once: a block decoded
+ * for its index by access is cached, rather than decoded again.  The
+ * {@link #length()} of the view requires indexing every block, and
+ * so decodes the whole buffer through a reused scratch buffer,
+ * without caching. </p>
+ *
+ * <p> Malformed input is replaced with U+FFFD. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use the instance as a synchronization monitor when shared
+ * among threads. </p>
+ *
+ * @see Chbuf#view(java.io.File)
+ */
+public class Chmap
+    extends Object
+    implements CharSequence
+{
+
+    public final static int BLOCK = 0x10000;//(64K)
+
+    private final static int CACHE = 8;
+
+
+    private final ByteBuffer source;
+
+    private final int limit;
+
+    private final CharsetDecoder dec;
+
+    private final CharBuffer scratch;
+
+    /**
+     * Byte and character offsets of indexed blocks.  Entry
+     * <code>`indexed'</code> is the end of the indexed region.
+     */
+    private int[] blk_byte = new int[0x40], blk_char = new int[0x40];
+
+    private int indexed = 0;
+
+    private final java.util.LinkedHashMap<Integer,char[]> cache =
+	new java.util.LinkedHashMap<Integer,char[]>(CACHE,0.75f,true){
+	    protected boolean removeEldestEntry(java.util.Map.Entry<Integer,char[]> e){
+		return (CACHE < this.size());
+	    }
+	};
+
+
+    /**
+     * @param source UTF-8 content from position to limit.  Not
+     * modified.
+     */
+    public Chmap(ByteBuffer source){
+	super();
+	if (null != source){
+	    this.source = source.slice();
+	    this.limit = this.source.limit();
+	    this.dec = Chbuf.UTF8.newDecoder();
+	    this.dec.onMalformedInput(CodingErrorAction.REPLACE);
+	    this.dec.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	    this.scratch = CharBuffer.allocate(BLOCK);
+	}
+	else {
+	    throw new IllegalArgumentException();
+	}
+    }
+
+
+    /**
+     * Indexes the whole buffer.
+     */
+    public int length(){
+	while (this.index(false));
+
+	return this.blk_char[this.indexed];
+    }
+    /**
+     * @return Number of bytes in the view
+     */
+    public int size(){
+	return this.limit;
+    }
+    public char charAt(int idx){
+	if (0 > idx)
+	    throw new StringIndexOutOfBoundsException(idx);
+	else {
+	    int blk = this.block(idx);
+	    if (0 > blk)
+		throw new StringIndexOutOfBoundsException(idx);
+	    else
+		return this.decode(blk)[idx-this.blk_char[blk]];
+	}
+    }
+    /**
+     * Copy content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive) into the destination at
+     * <code>`dst_ofs'</code>, as in <code>String.getChars</code>.
+     */
+    public void getChars(int start, int end, char[] dst, int dst_ofs){
+	if (0 > start || start > end)
+	    throw new StringIndexOutOfBoundsException(start);
+	else {
+	    while (start < end){
+		int blk = this.block(start);
+		if (0 > blk)
+		    throw new StringIndexOutOfBoundsException(start);
+		else {
+		    char[] cary = this.decode(blk);
+		    int b0 = this.blk_char[blk];
+		    int many = Math.min((end-start),(cary.length-(start-b0)));
+
+		    System.arraycopy(cary,(start-b0),dst,dst_ofs,many);
+
+		    start += many;
+		    dst_ofs += many;
+		}
+	    }
+	}
+    }
+    public CharSequence subSequence(int start, int end){
+	int len = (end-start);
+	char[] cary = new char[len];
+	this.getChars(start,end,cary,0);
+	return new String(cary,0,len);
+    }
+    /**
+     * Decodes the whole buffer.
+     */
+    public String toString(){
+	return this.subSequence(0,this.length()).toString();
+    }
+
+    /**
+     * @return Block containing the character offset, or negative one
+     * when the offset is beyond the end of the buffer
+     */
+    private int block(int idx){
+	while (idx >= this.blk_char[this.indexed]){
+	    if (!this.index(true))
+		return -1;
+	}
+	int lo = 0, hi = (this.indexed-1);
+	while (lo < hi){
+	    int m = (lo+hi+1)>>>1;
+	    if (this.blk_char[m] <= idx)
+		lo = m;
+	    else
+		hi = m-1;
+	}
+	return lo;
+    }
+    /**
+     * Index the next block.
+     *
+     * @param keep Cache the decoded block
+     *
+     * @return False at the end of the buffer
+     */
+    private boolean index(boolean keep){
+	int blk = this.indexed;
+	int start = this.blk_byte[blk];
+	if (start < this.limit){
+	    int end = this.end(start);
+
+	    CharBuffer out = this.scratch;
+	    out.clear();
+	    this.decode(start,end,out);
+
+	    if ((blk+2) > this.blk_byte.length){
+		int nlen = (this.blk_byte.length<<1);
+		int[] copier = new int[nlen];
+		System.arraycopy(this.blk_byte,0,copier,0,blk+1);
+		this.blk_byte = copier;
+		copier = new int[nlen];
+		System.arraycopy(this.blk_char,0,copier,0,blk+1);
+		this.blk_char = copier;
+	    }
+	    this.blk_byte[blk+1] = end;
+	    this.blk_char[blk+1] = this.blk_char[blk]+out.position();
+	    this.indexed = (blk+1);
+
+	    if (keep){
+		char[] re = new char[out.position()];
+		out.flip();
+		out.get(re);
+		this.cache.put(Integer.valueOf(blk),re);
+	    }
+	    return true;
+	}
+	else {
+	    return false;
+	}
+    }
+    /**
+     * @return Decoded characters of an indexed block
+     */
+    private char[] decode(int blk){
+	Integer key = Integer.valueOf(blk);
+	char[] re = this.cache.get(key);
+	if (null == re){
+	    re = new char[this.blk_char[blk+1]-this.blk_char[blk]];
+	    CharBuffer out = CharBuffer.wrap(re);
+	    this.decode(this.blk_byte[blk],this.blk_byte[blk+1],out);
+	    this.cache.put(key,re);
+	}
+	return re;
+    }
+    private void decode(int start, int end, CharBuffer out){
+	ByteBuffer in = this.source.duplicate();
+	in.limit(end);
+	in.position(start);
+
+	CharsetDecoder dec = this.dec;
+	dec.reset();
+	dec.decode(in,out,true);
+	dec.flush(out);
+    }
+    /**
+     * @return End of the block from start, at a UTF-8 sequence
+     * boundary
+     */
+    private int end(int start){
+	int end = (start+BLOCK);
+	if (end >= this.limit)
+	    return this.limit;
+	else {
+	    ByteBuffer source = this.source;
+	    for (int cc = 0; cc < 3 && 0x80 == (source.get(end) & 0xC0); cc++){
+		end -= 1;
+	    }
+	    return end;
+	}
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Off heap segmented byte buffer.  The slabs of {@link Sbuf} are
+ * direct buffers, so that large I/O staging lives outside the Java
+ * heap, and channel I/O avoids the copy through a temporary direct
+ * buffer made for heap buffers. </p>
+ *
+ * <p> The {@link #destroy()} method releases the native memory
+ * deterministically, where the platform permits, rather than waiting
+ * on the collector.  The instance must not be used after destroy.
+ * </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> As with {@link Bbuf}, use the instance as a synchronization
+ * monitor when shared among threads. </p>
+ *
+ * @see Sbuf
+ */
+public class Dbuf
+    extends Sbuf
+{
+
+    public Dbuf(){
+        super();
+    }
+    /**
+     * @param slab Slab size, rounded up to a power of two
+     */
+    public Dbuf(int slab){
+        super(slab);
+    }
+    /**
+     * Read file into buffer.
+     */
+    public Dbuf( java.io.File fin) throws java.io.IOException {
+        super();
+        this.readFrom(fin);
+    }
+
+
+    protected ByteBuffer slab(int size){
+
+        return ByteBuffer.allocateDirect(size);
+    }
+    protected void free(ByteBuffer slab){
+
+        Free(slab);
+    }
+
+
+    /**
+     * Release the native memory of a direct buffer.  The buffer
+     * must not be used after this call.
+     *
+     * <p> Android has <code>`NioUtils.freeDirectBuffer'</code>, Java 9
+     * has <code>`Unsafe.invokeCleaner'</code>, and Java 8 has the
+     * <code>`DirectBuffer.cleaner()'</code>.  These are each found by
+     * reflection, once. </p>
+     *
+     * @return False when the buffer is not direct, or the platform
+     * offers no release, leaving the memory to the collector
+     */
+    public final static boolean Free(ByteBuffer buffer){
+        if (null != buffer && buffer.isDirect()){
+            try {
+                switch (Release.KIND){
+                case Release.NIOUTILS:
+                    Release.FREE.invoke(null,buffer);
+                    return true;
+                case Release.UNSAFE:
+                    Release.FREE.invoke(Release.UNSAFE_INSTANCE,buffer);
+                    return true;
+                case Release.CLEANER:{
+                    Method cleaner = buffer.getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    Object clean = cleaner.invoke(buffer);
+                    if (null != clean){
+                        Release.FREE.invoke(clean);
+                        return true;
+                    }
+                    else
+                        return false;
+                }
+                default:
+                    return false;
+                }
+            }
+            catch (Exception exc){
+                return false;
+            }
+        }
+        else
+            return false;
+    }
+    /**
+     * Platform release, found once.
+     */
+    private final static class Release {
+
+        final static int NONE = 0, NIOUTILS = 1, UNSAFE = 2, CLEANER = 3;
+
+        final static int KIND;
+
+        final static Method FREE;
+
+        final static Object UNSAFE_INSTANCE;
+
+        static {
+            int kind = NONE;
+            Method free = null;
+            Object unsafe = null;
+            try {
+                Class<?> nio = Class.forName("java.nio.NioUtils");
+                free = nio.getMethod("freeDirectBuffer",ByteBuffer.class);
+                kind = NIOUTILS;
+            }
+            catch (Exception android){
+                try {
+                    Class<?> uc = Class.forName("sun.misc.Unsafe");
+                    free = uc.getMethod("invokeCleaner",ByteBuffer.class);
+                    Field f = uc.getDeclaredField("theUnsafe");
+                    f.setAccessible(true);
+                    unsafe = f.get(null);
+                    kind = UNSAFE;
+                }
+                catch (Exception java9){
+                    try {
+                        free = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                        kind = CLEANER;
+                    }
+                    catch (Exception java8){
+                        free = null;
+                        unsafe = null;
+                        kind = NONE;
+                    }
+                }
+            }
+            KIND = kind;
+            FREE = free;
+            UNSAFE_INSTANCE = unsafe;
+        }
+    }
+}
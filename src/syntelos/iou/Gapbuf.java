@@ -0,0 +1,393 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+/**
+ * <p> Gap character buffer for editing.  The content is held in one
+ * array with a movable gap at the last edit point, so that a run of
+ * inserts and deletes near one location costs only the distance
+ * moved by the gap rather than the length of the tail. </p>
+ *
+ * <p> The editing API follows {@link Chbuf}, with
+ * <code>`insert'</code>, <code>`delete'</code>,
+ * <code>`deleteCharAt'</code> and <code>`setCharAt'</code> accepting
+ * content offsets independent of the position of the gap.  Growth is
+ * geometric. </p>
+ *
+ * <p> A standalone utility: the android editor edits the platform
+ * <code>`Editable'</code>, which has its own gap, rather than an
+ * instance of this class. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> As with {@link Chbuf}, use the instance as a synchronization
+ * monitor when shared among threads. </p>
+ *
+ * @see Chbuf
+ */
+public class Gapbuf
+    extends Object
+    implements CharSequence
+{
+
+    private final static int GF = 0x400;//(1024)
+
+
+    private char[] buf;
+
+    /**
+     * Gap start (inclusive) and gap end (exclusive).
+     */
+    private int gs, ge;
+
+
+    public Gapbuf(){
+        this(GF);
+    }
+    public Gapbuf( int initsz){
+        super();
+        if ( 0 < initsz)
+            this.buf = new char[initsz];
+        else
+            this.buf = new char[GF];
+
+        this.gs = 0;
+        this.ge = this.buf.length;
+    }
+    /**
+     * Copy the argument into the buffer, and position the gap at the
+     * end.
+     */
+    public Gapbuf( CharSequence text){
+        this( (null == text)?(GF):(text.length()+GF));
+        if (null != text)
+            this.append(text);
+    }
+    public Gapbuf( char[] text){
+        this( (null == text)?(GF):(text.length+GF));
+        if (null != text)
+            this.append(text,0,text.length);
+    }
+
+
+    /**
+     * Content length. */
+    public int length(){
+        return (this.buf.length-(this.ge-this.gs));
+    }
+    public int capacity(){
+        return this.buf.length;
+    }
+    /**
+     * @return Content offset of the gap, or the last edit point.
+     */
+    public int gap(){
+        return this.gs;
+    }
+    public char charAt( int idx){
+
+        if ( idx < this.gs){
+
+            if ( 0 > idx)
+                throw new StringIndexOutOfBoundsException(idx);
+            else
+                return this.buf[idx];
+        }
+        else {
+            int x = idx+(this.ge-this.gs);
+
+            if ( x >= this.buf.length)
+                throw new StringIndexOutOfBoundsException(idx);
+            else
+                return this.buf[x];
+        }
+    }
+    public void setCharAt( int idx, char ch){
+
+        if ( idx < this.gs){
+
+            if ( 0 > idx)
+                throw new StringIndexOutOfBoundsException(idx);
+            else
+                this.buf[idx] = ch;
+        }
+        else {
+            int x = idx+(this.ge-this.gs);
+
+            if ( x >= this.buf.length)
+                throw new StringIndexOutOfBoundsException(idx);
+            else
+                this.buf[x] = ch;
+        }
+    }
+    /**
+     * Copy content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive) into the destination at
+     * <code>`dst_ofs'</code>, as in
+     * <code>String.getChars</code>. The gap is not moved.
+     */
+    public void getChars( int start, int end, char[] dst, int dst_ofs){
+
+        if ( 0 > start || start > end || end > this.length())
+            throw new StringIndexOutOfBoundsException(start);
+        else {
+            int gs = this.gs, gz = (this.ge-gs);
+
+            if ( end <= gs)
+
+                System.arraycopy(this.buf,start,dst,dst_ofs,(end-start));
+
+            else if ( start >= gs)
+
+                System.arraycopy(this.buf,(start+gz),dst,dst_ofs,(end-start));
+
+            else {
+                int a = (gs-start);
+
+                System.arraycopy(this.buf,start,dst,dst_ofs,a);
+
+                System.arraycopy(this.buf,this.ge,dst,(dst_ofs+a),(end-gs));
+            }
+        }
+    }
+
+    public Gapbuf append( char ch){
+
+        return this.insert(this.length(),ch);
+    }
+    public Gapbuf append( char[] cary, int ofs, int len){
+
+        return this.insert(this.length(),cary,ofs,len);
+    }
+    public Gapbuf append( CharSequence s){
+
+        return this.insert(this.length(),s);
+    }
+    public Gapbuf insert( int idx, char ch){
+
+        this.move(idx);
+
+        if ( this.gs == this.ge)
+            this.grow(1);
+
+        this.buf[this.gs++] = ch;
+
+        return this;
+    }
+    public Gapbuf insert( int idx, char[] cary, int ofs, int len){
+
+        if ( 0 < len){
+
+            this.move(idx);
+
+            if ( len > (this.ge-this.gs))
+                this.grow(len);
+
+            System.arraycopy(cary,ofs,this.buf,this.gs,len);
+
+            this.gs += len;
+        }
+        return this;
+    }
+    public Gapbuf insert( int idx, CharSequence s){
+
+        if ( null != s){
+
+            int len = s.length();
+            if ( 0 < len){
+
+                this.move(idx);
+
+                if ( len > (this.ge-this.gs))
+                    this.grow(len);
+
+                if ( s instanceof String)
+
+                    ((String)s).getChars(0,len,this.buf,this.gs);
+                else {
+                    char[] buf = this.buf;
+
+                    for ( int cc = 0, gs = this.gs; cc < len; cc++){
+
+                        buf[gs+cc] = s.charAt(cc);
+                    }
+                }
+                this.gs += len;
+            }
+        }
+        return this;
+    }
+    /**
+     * Delete content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive) by widening the gap.
+     */
+    public Gapbuf delete( int start, int end){
+
+        int count = this.length();
+
+        if ( end > count)
+            end = count;
+
+        int len = (end-start);
+
+        if ( 0 < len){
+
+            this.move(start);
+
+            this.ge += len;
+        }
+        return this;
+    }
+    public Gapbuf deleteCharAt( int idx){
+
+        if ( 0 > idx || idx >= this.length())
+            throw new StringIndexOutOfBoundsException(idx);
+        else {
+            this.move(idx);
+
+            this.ge += 1;
+
+            return this;
+        }
+    }
+    public void ensureCapacity( int min){
+
+        int free = (this.ge-this.gs);
+
+        int need = min-(this.buf.length-free);
+
+        if ( need > free)
+
+            this.grow(need);
+    }
+    /**
+     * Discard content, reuse buffer. */
+    public Gapbuf reset(){
+        this.gs = 0;
+        this.ge = this.buf.length;
+        return this;
+    }
+
+    public CharSequence subSequence( int start, int end){
+
+        int len = (end-start);
+
+        char[] cary = new char[len];
+
+        this.getChars(start,end,cary,0);
+
+        return new String(cary,0,len);
+    }
+    /**
+     * Returns null for an empty buffer.  Doesn't move the gap.
+     */
+    public char[] toCary(){
+
+        int len = this.length();
+
+        if ( 0 == len)
+            return null;
+        else {
+            char[] copier = new char[len];
+
+            this.getChars(0,len,copier,0);
+
+            return copier;
+        }
+    }
+    /**
+     * Returns null for an empty buffer.  Doesn't move the gap.
+     */
+    public char[] toCharArray(){
+        return this.toCary();
+    }
+    /**
+     * Returns the empty string for an empty buffer, as required by
+     * <code>CharSequence</code>.
+     */
+    public String toString(){
+        char[] cary = this.toCary();
+        if ( null != cary)
+            return new String(cary,0,cary.length);
+        else
+            return "";
+    }
+
+    /**
+     * Position the gap at the content offset.
+     */
+    private void move( int idx){
+
+        int gs = this.gs;
+
+        if ( idx < gs){
+
+            if ( 0 > idx)
+                throw new StringIndexOutOfBoundsException(idx);
+            else {
+                int many = (gs-idx);
+
+                this.ge -= many;
+
+                System.arraycopy(this.buf,idx,this.buf,this.ge,many);
+
+                this.gs = idx;
+            }
+        }
+        else if ( idx > gs){
+
+            int many = (idx-gs);
+
+            if ( (this.ge+many) > this.buf.length)
+                throw new StringIndexOutOfBoundsException(idx);
+            else {
+                System.arraycopy(this.buf,this.ge,this.buf,gs,many);
+
+                this.gs += many;
+
+                this.ge += many;
+            }
+        }
+    }
+    /**
+     * Widen the gap to accomodate at least <code>`many'</code>
+     * characters, doubling the buffer.
+     */
+    private void grow( int many){
+
+        char[] buf = this.buf;
+
+        int blen = buf.length;
+
+        int tail = (blen-this.ge);
+
+        int nlen = Math.max((blen<<1),(blen-(this.ge-this.gs))+many+GF);
+
+        char[] copier = new char[nlen];
+
+        System.arraycopy(buf,0,copier,0,this.gs);
+
+        System.arraycopy(buf,this.ge,copier,(nlen-tail),tail);
+
+        this.buf = copier;
+
+        this.ge = (nlen-tail);
+    }
+}
@@ -20,10 +20,23 @@
 
 package syntelos.iou;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 /**
  * <p> Fast hexidecimal numeric coding correct (as to recode itself)
  * across all integer and long values.  Output A-F characters are
  * lower case. </p>
+ *
+ * <p> Coding is table driven.  The array, buffer and appendable forms
+ * write into storage provided by the caller, and allocate nothing.
+ * The {@link Hex.Decoder} carries an odd digit across input chunks,
+ * for streaming from a {@link Bbuf} or a channel.  An odd number of
+ * digits decodes the last digit into the high four bits of the last
+ * byte, so that <code>"abc"</code> decodes to <code>0xab
+ * 0xc0</code>. </p>
  * 
  * @author jdp (@syntelos)
  * @since 1.1
@@ -34,15 +47,46 @@ public abstract class Hex
 
     private final static char[] chars = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
 
+    /**
+     * Two digits for each byte value
+     */
+    private final static char[] PAIRS = new char[0x200];
+
+    /**
+     * Digit value for each eight bit character, or negative one
+     */
+    private final static byte[] NIBBLE = new byte[0x100];
+
+    static {
+        for (int cc = 0; cc < 0x100; cc++){
+            PAIRS[cc<<1] = chars[cc>>>4];
+            PAIRS[(cc<<1)+1] = chars[cc & 0xf];
+        }
+        java.util.Arrays.fill(NIBBLE,(byte)-1);
+        for (int cc = 0; cc < 10; cc++){
+            NIBBLE['0'+cc] = (byte)cc;
+        }
+        for (int cc = 0; cc < 6; cc++){
+            NIBBLE['a'+cc] = (byte)(10+cc);
+            NIBBLE['A'+cc] = (byte)(10+cc);
+        }
+    }
+
+    /**
+     * Streaming buffer size
+     */
+    private final static int CHUNK = 0x2000;//(8K)
+
+
     /**
      * From ASCII to binary
      */
     public final static byte[] decode ( String h){
         if (null != h){
             int len = h.length();
-            byte[] ascii = new byte[len];
-            h.getBytes(0,len,ascii,0);
-            return decode( ascii, 0, len);
+            byte[] buffer = new byte[decoded(len)];
+            decode(h,0,len,buffer,0);
+            return buffer;
         }
         else
             return null;
@@ -60,78 +104,102 @@ public abstract class Hex
      * From ASCII to binary
      */
     public final static byte[] decode ( byte[] cary, int ofs, int len){
-        int olen = len;
-        int term = len-1;
 
-        if ( 1 == (len&1)){  //(odd number of digits in `cary')
+        byte[] buffer = new byte[decoded(len)];
 
-            len += 1;
+        decode(cary,ofs,len,buffer,0);
 
-            term = len-1;
-        }
+        return buffer;
+    }
+    /**
+     * @return Number of bytes decoded from the number of digits
+     */
+    public final static int decoded( int len){
+        return ((len+1)>>1);
+    }
+    /**
+     * From ASCII to binary, into the target.
+     *
+     * @return Offset following the bytes written into the target
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    public final static int decode ( byte[] src, int ofs, int len, byte[] dst, int dst_ofs){
 
-        byte[] buffer = new byte[len/2];
+        int pairs = (len>>1);
 
-        int bcm = 1;
+        int d = Pairs(src,ofs,pairs,dst,dst_ofs);
 
-        if ( 0 < ofs){
+        if ( 1 == (len & 1))
 
-            if (1 == (ofs&1))
+            dst[d++] = (byte)(Nibble(src[ofs+len-1])<<4);
 
-                bcm = 2;
-            else
-                bcm = 1; 
+        return d;
+    }
+    /**
+     * From characters to binary, into the target.
+     *
+     * @return Offset following the bytes written into the target
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    public final static int decode ( CharSequence src, int start, int end, byte[] dst, int dst_ofs){
+        int d = dst_ofs, cc = start;
+        for (; (cc+1) < end; cc += 2){
 
-            len += ofs;
+            dst[d++] = (byte)((Nibble(src.charAt(cc))<<4)|Nibble(src.charAt(cc+1)));
         }
+        if (cc < end)
+            dst[d++] = (byte)(Nibble(src.charAt(cc))<<4);
 
-        byte ch;
-
-        for ( int cc = ofs, bc = 0; cc < len; cc++){
-
-            if ( cc == term && cc == olen)
-
-                break; //(odd number of digits in `cary')
-            else 
-                ch = cary[cc];
+        return d;
+    }
+    /**
+     * From characters to binary, into the target.
+     *
+     * @return Offset following the bytes written into the target
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    public final static int decode ( char[] src, int ofs, int len, byte[] dst, int dst_ofs){
+        int d = dst_ofs, cc = ofs, end = (ofs+len);
+        for (; (cc+1) < end; cc += 2){
 
-            if ( ofs < cc && (0 == (cc & bcm)))
-                bc += 1;
+            dst[d++] = (byte)((Nibble(src[cc])<<4)|Nibble(src[cc+1]));
+        }
+        if (cc < end)
+            dst[d++] = (byte)(Nibble(src[cc])<<4);
 
-            if ( '0' <= ch){
+        return d;
+    }
+    /**
+     * From ASCII to binary, decoding whole pairs of digits while the
+     * target has space.  An odd digit is left in the source.
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    public final static void decode ( ByteBuffer src, ByteBuffer dst){
 
-                if ( '9' >= ch){
+        int pairs = Math.min((src.remaining()>>1),dst.remaining());
 
-                    if ( 1 == (cc&1))
+        if (src.hasArray() && dst.hasArray()){
 
-                        buffer[bc] += (byte)(ch-'0');
-                    else
-                        buffer[bc] += (byte)((ch-'0')<<4);
-                }
-                else if ( 'a' <= ch && 'f' >= ch){
+            int s = src.arrayOffset()+src.position();
+            int d = dst.arrayOffset()+dst.position();
 
-                    if ( 1 == (cc&1))
+            Pairs(src.array(),s,pairs,dst.array(),d);
 
-                        buffer[bc] += (byte)((ch-'a')+10);
-                    else
-                        buffer[bc] += (byte)(((ch-'a')+10)<<4);
-                }
-                else if ( 'A' <= ch && 'F' >= ch){
+            src.position(src.position()+(pairs<<1));
+            dst.position(dst.position()+pairs);
+        }
+        else {
+            for (int cc = 0; cc < pairs; cc++){
 
-                    if ( 1 == (cc&1))
+                int hi = Nibble(src.get());
 
-                        buffer[bc] += (byte)((ch-'A')+10);
-                    else
-                        buffer[bc] += (byte)(((ch-'A')+10)<<4);
-                }
-                else
-                    throw new IllegalArgumentException("String '"+new String(cary,0,ofs,olen)+"' is not hex.");
+                dst.put((byte)((hi<<4)|Nibble(src.get())));
             }
-            else
-                throw new IllegalArgumentException("String '"+new String(cary,0,ofs,olen)+"' is not hex.");
-
         }
-        return buffer;
     }
     /**
      * <p> Basic HEX encoding primitives. </p>
@@ -173,15 +241,7 @@ public abstract class Hex
         else {
             int len = buffer.length;
             char[] cary = new char[(len*2)];
-            int val, ca = 0;
-
-            for ( int cc = 0; cc < len; cc++){
-
-                val = (buffer[cc]&0xff);
-
-                cary[ca++] = (chars[(val>>>4)&0xf]);
-                cary[ca++] = (chars[ val&0xf]);
-            }
+            encode(buffer,0,len,cary,0);
             return new java.lang.String(cary);
         }
     }
@@ -196,17 +256,224 @@ public abstract class Hex
         else {
             int len = buffer.length;
             byte[] bary = new byte[(len*2)];
-            int val, ca = 0;
+            encode(buffer,0,len,bary,0);
+            return bary;
+        }
+    }
+    /**
+     * Binary to hexadecimal characters, into the target, which has
+     * space for two characters per byte.
+     *
+     * @return Offset following the characters written into the
+     * target
+     */
+    public final static int encode ( byte[] src, int ofs, int len, char[] dst, int dst_ofs){
+        final char[] pairs = PAIRS;
+        int d = dst_ofs;
+        for (int cc = ofs, end = (ofs+len); cc < end; cc++){
+
+            int p = ((src[cc] & 0xff)<<1);
+
+            dst[d++] = pairs[p];
+            dst[d++] = pairs[p+1];
+        }
+        return d;
+    }
+    /**
+     * Binary to seven bit ASCII hexadecimal, into the target, which
+     * has space for two bytes per byte.
+     *
+     * @return Offset following the bytes written into the target
+     */
+    public final static int encode ( byte[] src, int ofs, int len, byte[] dst, int dst_ofs){
+        final char[] pairs = PAIRS;
+        int d = dst_ofs;
+        for (int cc = ofs, end = (ofs+len); cc < end; cc++){
+
+            int p = ((src[cc] & 0xff)<<1);
+
+            dst[d++] = (byte)pairs[p];
+            dst[d++] = (byte)pairs[p+1];
+        }
+        return d;
+    }
+    /**
+     * Binary to hexadecimal characters, appended to the target.
+     */
+    public final static void encode ( byte[] src, int ofs, int len, Appendable dst)
+        throws java.io.IOException
+    {
+        final char[] pairs = PAIRS;
+        for (int cc = ofs, end = (ofs+len); cc < end; cc++){
+
+            int p = ((src[cc] & 0xff)<<1);
+
+            dst.append(pairs[p]);
+            dst.append(pairs[p+1]);
+        }
+    }
+    /**
+     * Binary to seven bit ASCII hexadecimal, encoding while the
+     * target has space for a pair of digits.
+     */
+    public final static void encode ( ByteBuffer src, ByteBuffer dst){
+
+        int many = Math.min(src.remaining(),(dst.remaining()>>1));
+
+        if (src.hasArray() && dst.hasArray()){
+
+            int s = src.arrayOffset()+src.position();
+            int d = dst.arrayOffset()+dst.position();
+
+            encode(src.array(),s,many,dst.array(),d);
+
+            src.position(src.position()+many);
+            dst.position(dst.position()+(many<<1));
+        }
+        else {
+            final char[] pairs = PAIRS;
+            for (int cc = 0; cc < many; cc++){
+
+                int p = ((src.get() & 0xff)<<1);
+
+                dst.put((byte)pairs[p]);
+                dst.put((byte)pairs[p+1]);
+            }
+        }
+    }
+    /**
+     * Binary to hexadecimal characters, encoding while the target
+     * has space for a pair of digits.
+     */
+    public final static void encode ( ByteBuffer src, CharBuffer dst){
+
+        int many = Math.min(src.remaining(),(dst.remaining()>>1));
+
+        if (src.hasArray() && dst.hasArray()){
 
-            for ( int cc = 0; cc < len; cc++){
+            int s = src.arrayOffset()+src.position();
+            int d = dst.arrayOffset()+dst.position();
 
-                val = (buffer[cc]&0xff);
+            encode(src.array(),s,many,dst.array(),d);
 
-                bary[ca++] = (byte)(chars[(val>>>4)&0xf]);
-                bary[ca++] = (byte)(chars[ val&0xf]);
+            src.position(src.position()+many);
+            dst.position(dst.position()+(many<<1));
+        }
+        else {
+            final char[] pairs = PAIRS;
+            for (int cc = 0; cc < many; cc++){
+
+                int p = ((src.get() & 0xff)<<1);
+
+                dst.put(pairs[p]);
+                dst.put(pairs[p+1]);
+            }
+        }
+    }
+    /**
+     * Consume the available content of the buffer, appending its
+     * hexadecimal encoding to the target.
+     *
+     * @return Number of bytes encoded
+     */
+    public final static int encode ( Bbuf src, Appendable dst)
+        throws java.io.IOException
+    {
+        int total = 0;
+        byte[] iob = Pool.Bytes(CHUNK);
+        try {
+            int count;
+            while (0 < (count = src.read(iob,0,CHUNK))){
+
+                encode(iob,0,count,dst);
+
+                total += count;
             }
-            return bary;
         }
+        finally {
+            Pool.Release(iob);
+        }
+        return total;
+    }
+    /**
+     * Stream the input channel to its ASCII hexadecimal encoding on
+     * the output channel.  Neither channel is closed.
+     *
+     * @return Number of bytes encoded
+     */
+    public final static long encode ( ReadableByteChannel in, WritableByteChannel out)
+        throws java.io.IOException
+    {
+        long total = 0L;
+        byte[] ib = Pool.Bytes(CHUNK);
+        byte[] ob = Pool.Bytes(CHUNK<<1);
+        try {
+            ByteBuffer src = ByteBuffer.wrap(ib,0,CHUNK);
+            ByteBuffer dst = ByteBuffer.wrap(ob,0,(CHUNK<<1));
+            int count;
+            while (-1 != (count = in.read(src))){
+                if (0 < count){
+                    int d = encode(ib,0,count,ob,0);
+
+                    dst.limit(d);
+                    dst.position(0);
+
+                    Chbuf.Drain(dst,out);
+
+                    total += count;
+                }
+                src.clear();
+            }
+        }
+        finally {
+            Pool.Release(ib);
+            Pool.Release(ob);
+        }
+        return total;
+    }
+    /**
+     * Stream the ASCII hexadecimal input channel to its decoding on
+     * the output channel.  Neither channel is closed.
+     *
+     * @return Number of bytes decoded
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    public final static long decode ( ReadableByteChannel in, WritableByteChannel out)
+        throws java.io.IOException
+    {
+        long total = 0L;
+        Decoder dec = new Decoder();
+        byte[] ib = Pool.Bytes(CHUNK);
+        byte[] ob = Pool.Bytes(CHUNK);
+        try {
+            ByteBuffer src = ByteBuffer.wrap(ib,0,CHUNK);
+            ByteBuffer dst = ByteBuffer.wrap(ob,0,CHUNK);
+            int count;
+            while (-1 != (count = in.read(src))){
+                if (0 < count){
+                    int d = dec.decode(ib,0,count,ob,0);
+
+                    dst.limit(d);
+                    dst.position(0);
+
+                    total += Chbuf.Drain(dst,out);
+                }
+                src.clear();
+            }
+            int d = dec.finish(ob,0);
+            if (0 < d){
+                dst.limit(d);
+                dst.position(0);
+
+                total += Chbuf.Drain(dst,out);
+            }
+        }
+        finally {
+            Pool.Release(ib);
+            Pool.Release(ob);
+        }
+        return total;
     }
 
     public final static String encode( long value){
@@ -217,4 +484,175 @@ public abstract class Hex
         byte[] bvalue = Integer(value);
         return encode(bvalue);
     }
+
+    /**
+     * @return Digit value
+     *
+     * @exception java.lang.IllegalArgumentException Not hex.
+     */
+    private final static int Nibble( int ch){
+        int n = (ch < 0x100 && 0 <= ch)?(NIBBLE[ch]):(-1);
+        if (0 > n)
+            throw new IllegalArgumentException("Character '"+(char)ch+"' is not hex.");
+        else
+            return n;
+    }
+    private final static int Nibble( byte ch){
+        int n = NIBBLE[ch & 0xff];
+        if (0 > n)
+            throw new IllegalArgumentException("Character '"+(char)(ch & 0xff)+"' is not hex.");
+        else
+            return n;
+    }
+    /**
+     * Decode pairs of digits.
+     *
+     * @return Offset following the bytes written into the target
+     */
+    private final static int Pairs( byte[] src, int s, int pairs, byte[] dst, int d){
+        final byte[] nibble = NIBBLE;
+        for (int cc = 0; cc < pairs; cc++, s += 2){
+
+            int hi = nibble[src[s] & 0xff], lo = nibble[src[s+1] & 0xff];
+
+            if (0 > (hi|lo))
+                throw new IllegalArgumentException("Character '"+(char)(src[(0 > hi)?(s):(s+1)] & 0xff)+"' is not hex.");
+            else
+                dst[d++] = (byte)((hi<<4)|lo);
+        }
+        return d;
+    }
+
+
+    /**
+     * <p> Streaming hexadecimal decoder carrying an odd digit from
+     * one input chunk into the next. </p>
+     *
+     * <h3>Not MT Safe</h3>
+     */
+    public static class Decoder
+        extends Object
+    {
+        /**
+         * Carried high digit, or negative one
+         */
+        private int carry = -1;
+
+
+        public Decoder(){
+            super();
+        }
+
+
+        /**
+         * @return An odd digit is carried
+         */
+        public boolean pending(){
+            return (-1 < this.carry);
+        }
+        /**
+         * Decode ASCII digits into the target, which has space for
+         * <code>`(len+1)/2'</code> bytes.
+         *
+         * @return Offset following the bytes written into the target
+         *
+         * @exception java.lang.IllegalArgumentException Not hex.
+         */
+        public int decode(byte[] src, int ofs, int len, byte[] dst, int dst_ofs){
+            int d = dst_ofs;
+            if (0 < len){
+                if (-1 < this.carry){
+                    dst[d++] = (byte)((this.carry<<4)|Nibble(src[ofs]));
+                    this.carry = -1;
+                    ofs += 1;
+                    len -= 1;
+                }
+                d = Pairs(src,ofs,(len>>1),dst,d);
+
+                if (1 == (len & 1))
+                    this.carry = Nibble(src[ofs+len-1]);
+            }
+            return d;
+        }
+        /**
+         * Decode characters into the target, which has space for
+         * <code>`(end-start+1)/2'</code> bytes.
+         *
+         * @return Offset following the bytes written into the target
+         *
+         * @exception java.lang.IllegalArgumentException Not hex.
+         */
+        public int decode(CharSequence src, int start, int end, byte[] dst, int dst_ofs){
+            int d = dst_ofs, cc = start;
+            if (cc < end && -1 < this.carry){
+                dst[d++] = (byte)((this.carry<<4)|Nibble(src.charAt(cc++)));
+                this.carry = -1;
+            }
+            for (; (cc+1) < end; cc += 2){
+
+                dst[d++] = (byte)((Nibble(src.charAt(cc))<<4)|Nibble(src.charAt(cc+1)));
+            }
+            if (cc < end)
+                this.carry = Nibble(src.charAt(cc));
+
+            return d;
+        }
+        /**
+         * Consume the available ASCII digits of the source buffer,
+         * writing their decoding to the target buffer.
+         *
+         * @return Number of bytes written
+         */
+        public int decode(Bbuf src, Bbuf dst)
+            throws java.io.IOException
+        {
+            int total = 0;
+            byte[] ib = Pool.Bytes(CHUNK);
+            byte[] ob = Pool.Bytes(CHUNK);
+            try {
+                int count;
+                while (0 < (count = src.read(ib,0,CHUNK))){
+
+                    int d = this.decode(ib,0,count,ob,0);
+
+                    dst.write(ob,0,d);
+
+                    total += d;
+                }
+            }
+            finally {
+                Pool.Release(ib);
+                Pool.Release(ob);
+            }
+            return total;
+        }
+        /**
+         * End of input: write a carried digit into the high four bits
+         * of a final byte.
+         *
+         * @return Offset following the bytes written into the target
+         */
+        public int finish(byte[] dst, int dst_ofs){
+            if (-1 < this.carry){
+                dst[dst_ofs++] = (byte)(this.carry<<4);
+                this.carry = -1;
+            }
+            return dst_ofs;
+        }
+        /**
+         * End of input: write a carried digit into the high four bits
+         * of a final byte.
+         */
+        public void finish(Bbuf dst)
+            throws java.io.IOException
+        {
+            if (-1 < this.carry){
+                dst.write(this.carry<<4);
+                this.carry = -1;
+            }
+        }
+        public void reset(){
+            this.carry = -1;
+        }
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 2018, John Pritchard, Syntelos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Paged {@link Printer} view of a file.
+ *
+ * <p> A page is a fixed number of rows of {@link Printer#ROW} bytes.
+ * The file is mapped a window at a time, a whole number of pages
+ * long, and a page is rendered from the window only when it is
+ * requested.  A few rendered pages are retained in least recently
+ * used order, for scrolling back and forth.  Seeking to an offset is
+ * arithmetic, so that the cost of a scroll is independent of the
+ * file size. </p>
+ *
+ * <p> The page rendered at the end of the file has the final offset
+ * line of the printer. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use the instance as a synchronization monitor when shared
+ * among threads. </p>
+ */
+public class Hexview
+    extends Object
+    implements java.io.Closeable
+{
+    /**
+     * Default rows per page.
+     */
+    public final static int ROWS = 64;
+    /**
+     * Default rendered pages retained.
+     */
+    public final static int CACHE = 8;
+    /**
+     * Mapped window target size.
+     */
+    private final static int WINDOW = 0x400000;//(4M)
+
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final Printer printer;
+
+    private final int rows, page, window;
+
+    private final java.util.LinkedHashMap<Long,String> cache;
+
+    private final byte[] bytes;
+
+    private final StringBuilder text;
+
+    private MappedByteBuffer map;
+
+    private long map_ofs = -1L;
+
+
+    public Hexview(File file)
+	throws java.io.IOException
+    {
+	this(file,null,ROWS,CACHE);
+    }
+    /**
+     * @param file Source file, opened for reading until {@link
+     * #close()}
+     * @param c Printer configuration, optional
+     * @param rows Rows per page
+     * @param cache Rendered pages retained
+     */
+    public Hexview(File file, Printer.Configuration c, int rows, final int cache)
+	throws java.io.IOException
+    {
+	super();
+	if (null != file && 0 < rows && 0 < cache){
+
+	    this.rows = rows;
+	    this.page = (rows*Printer.ROW);
+	    this.window = (this.page*Math.max(1,(WINDOW/this.page)));
+
+	    this.printer = new Printer(c);
+	    this.bytes = new byte[this.page];
+	    this.text = new StringBuilder();
+
+	    this.cache = new java.util.LinkedHashMap<Long,String>(16,0.75f,true){
+		protected boolean removeEldestEntry(java.util.Map.Entry<Long,String> eldest){
+
+		    return (this.size() > cache);
+		}
+	    };
+
+	    this.channel = new RandomAccessFile(file,"r").getChannel();
+	    this.size = this.channel.size();
+	}
+	else {
+	    throw new IllegalArgumentException();
+	}
+    }
+
+
+    /**
+     * @return File length, when opened
+     */
+    public long size(){
+	return this.size;
+    }
+    public int rows(){
+	return this.rows;
+    }
+    /**
+     * @return Bytes per page
+     */
+    public int page(){
+	return this.page;
+    }
+    /**
+     * @return Number of pages, at least one
+     */
+    public long pages(){
+	if (0L < this.size)
+	    return ((this.size+this.page-1L)/this.page);
+	else
+	    return 1L;
+    }
+    /**
+     * @return Index of the page containing the offset, clamped to the
+     * pages of the file
+     */
+    public long pageOf(long offset){
+	if (0L < offset)
+	    return Math.min((offset/this.page),(this.pages()-1L));
+	else
+	    return 0L;
+    }
+    /**
+     * @return Row of its page containing the offset
+     */
+    public int rowOf(long offset){
+	if (0L < offset)
+	    return (int)((offset % this.page)/Printer.ROW);
+	else
+	    return 0;
+    }
+    /**
+     * @return Rendered page containing the offset
+     */
+    public String seek(long offset)
+	throws java.io.IOException
+    {
+	return this.page(this.pageOf(offset));
+    }
+    /**
+     * @param index Page index from zero
+     *
+     * @return Rendered rows of the page
+     */
+    public String page(long index)
+	throws java.io.IOException
+    {
+	if (-1L < index && index < this.pages()){
+
+	    Long key = Long.valueOf(index);
+
+	    String re = this.cache.get(key);
+	    if (null == re){
+
+		re = this.render(index);
+
+		this.cache.put(key,re);
+	    }
+	    return re;
+	}
+	else
+	    throw new IllegalArgumentException(String.valueOf(index));
+    }
+    /**
+     * Release the mapped window and the file.
+     */
+    public void close()
+	throws java.io.IOException
+    {
+	this.cache.clear();
+	this.unmap();
+	this.channel.close();
+    }
+
+    private String render(long index)
+	throws java.io.IOException
+    {
+	final long ofs = (index*this.page);
+	final int len = (int)Math.min(this.page,(this.size-ofs));
+
+	final byte[] bytes = this.bytes;
+	if (0 < len){
+
+	    MappedByteBuffer map = this.map(ofs);
+
+	    map.position((int)(ofs-this.map_ofs));
+
+	    map.get(bytes,0,len);
+	}
+
+	StringBuilder text = this.text;
+	text.setLength(0);
+
+	Printer printer = this.printer;
+
+	printer.seek(ofs);
+
+	printer.rows(bytes,0,len,text);
+
+	if ((ofs+len) >= this.size)
+
+	    printer.end(text);
+
+	return text.toString();
+    }
+    /**
+     * @return Window containing the offset
+     */
+    private MappedByteBuffer map(long ofs)
+	throws java.io.IOException
+    {
+	long start = ((ofs/this.window)*this.window);
+
+	if (start != this.map_ofs || null == this.map){
+
+	    this.unmap();
+
+	    long len = Math.min(this.window,(this.size-start));
+
+	    this.map = this.channel.map(FileChannel.MapMode.READ_ONLY,start,len);
+	    this.map_ofs = start;
+	}
+	return this.map;
+    }
+    private void unmap(){
+	MappedByteBuffer map = this.map;
+	if (null != map){
+	    this.map = null;
+	    this.map_ofs = -1L;
+
+	    Dbuf.Free(map);
+	}
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p> Write ahead journal of text edits over a base file, for
+ * recovering unsaved edits. </p>
+ *
+ * <p> The journal file has a header identifying the base file by
+ * its length and modification time, followed by edit records.  A
+ * record replaces <code>`before'</code> characters from
+ * <code>`start'</code> with the inserted text, as the varints
+ * <code>`start'</code>, <code>`before'</code> and the UTF-8 length
+ * of the inserted text, followed by the UTF-8 bytes. </p>
+ *
+ * <pre>
+ * header  := magic:4 base_length:8 base_mtime:8
+ * record  := start:varint before:varint length:varint utf8:length
+ * </pre>
+ *
+ * <p> Construction performs no I/O, so that the editing thread may
+ * record from the start.  Records are collected in memory by {@link
+ * #record}, and written and forced to the device by {@link
+ * #commit()}, so that one commit covers a group of edits.  The
+ * journal file is opened by {@link #open(Journal.Target)}, which
+ * replays the records of a journal over the same base, dropping a
+ * record torn by a crash.  Following a save of the document, {@link
+ * #reset(long)} truncates the journal over the new base, opening it
+ * if necessary.  Commits before the journal file is opened are
+ * deferred. </p>
+ *
+ * <h3>MT Safe</h3>
+ *
+ * <p> The editing thread records, while another thread opens,
+ * commits and resets.  Recording is synchronized on the instance,
+ * and file I/O is synchronized on a separate monitor, so that a
+ * commit waiting on the device does not block recording. </p>
+ */
+public class Journal
+    extends Object
+    implements java.io.Closeable
+{
+    /**
+     * Edit target for replay.
+     */
+    public interface Target {
+        /**
+         * @return Text length
+         */
+        public int length();
+        /**
+         * Replace the text from <code>`start'</code> (inclusive) to
+         * <code>`end'</code> (exclusive).
+         */
+        public void replace(int start, int end, char[] text, int ofs, int len);
+    }
+    /**
+     * Replay target collecting edits, for replay off the editing
+     * thread before the document is read, and application to the
+     * document in one step on the editing thread.  The length of the
+     * document is not known while collecting, so the edits are
+     * checked when applied.
+     */
+    public static class Edits
+        extends Object
+        implements Target
+    {
+        private int count;
+
+        private int[] starts = new int[0x10], ends = new int[0x10];
+
+        private char[][] texts = new char[0x10][];
+
+
+        public Edits(){
+            super();
+        }
+
+
+        /**
+         * @return Unknown length
+         */
+        public int length(){
+            return Integer.MAX_VALUE;
+        }
+        /**
+         * @return Number of edits
+         */
+        public int size(){
+            return this.count;
+        }
+        public void replace(int start, int end, char[] text, int ofs, int len){
+            if (-1 < start && start <= end){
+                int cc = this.count;
+                if (cc == this.starts.length){
+                    this.starts = java.util.Arrays.copyOf(this.starts,(cc<<1));
+                    this.ends = java.util.Arrays.copyOf(this.ends,(cc<<1));
+                    this.texts = java.util.Arrays.copyOf(this.texts,(cc<<1));
+                }
+                this.starts[cc] = start;
+                this.ends[cc] = end;
+                this.texts[cc] = java.util.Arrays.copyOfRange(text,ofs,(ofs+len));
+                this.count = (cc+1);
+            }
+            else
+                throw new IllegalArgumentException(String.format("Replace (%d,%d)",start,end));
+        }
+        /**
+         * Apply the edits to the document having the content of the
+         * base file, stopping at an edit beyond the end of the
+         * document.
+         *
+         * @return Number of edits applied
+         */
+        public int apply(Target target){
+            for (int cc = 0; cc < this.count; cc++){
+                if (this.ends[cc] > target.length())
+                    return cc;
+                else {
+                    char[] text = this.texts[cc];
+                    target.replace(this.starts[cc],this.ends[cc],text,0,text.length);
+                }
+            }
+            return this.count;
+        }
+    }
+
+
+    public final static int MAGIC = 0x534A4E4C;//(SJNL)
+
+    public final static int HEADER = 20;
+
+    /**
+     * Journal size beyond which a save of the document is advised,
+     * to compact the journal
+     */
+    public final static long COMPACT = 0x100000L;//(1M)
+
+
+    private final File file, base;
+
+    private final boolean sync;
+
+    private final Object writer = new Object();
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private Bbuf pending = new Bbuf(0x1000), writing = new Bbuf(0x1000);
+    /**
+     * Journal length written, or the header length before the
+     * journal file is opened
+     */
+    private long committed = HEADER;
+
+    private int records, replayed;
+
+
+    /**
+     * @param file Journal file
+     * @param base Document file
+     * @param sync Force commits to the device
+     */
+    public Journal(File file, File base, boolean sync){
+        super();
+        if (null != file && null != base){
+            this.file = file;
+            this.base = base;
+            this.sync = sync;
+        }
+        else
+            throw new IllegalArgumentException();
+    }
+
+
+    public final File getFile(){
+        return this.file;
+    }
+    /**
+     * @return Number of records replayed by open
+     */
+    public final int replayed(){
+        return this.replayed;
+    }
+    /**
+     * @return Number of records replayed and recorded, including
+     * records not committed
+     */
+    public synchronized int records(){
+        return this.records;
+    }
+    /**
+     * @return Journal length, including records not committed
+     */
+    public synchronized long size(){
+        try {
+            return (this.committed + this.pending.available());
+        }
+        catch (IOException exc){
+            throw new IllegalStateException(exc);
+        }
+    }
+    /**
+     * Record the replacement of <code>`before'</code> characters
+     * from <code>`start'</code> with the <code>`count'</code>
+     * characters of the text from <code>`ofs'</code>.
+     */
+    public synchronized void record(int start, int before, char[] text, int ofs, int count)
+        throws IOException
+    {
+        if (-1 < start && -1 < before && -1 < count){
+
+            int length = Utf8.encoded(text,ofs,count);
+
+            Bbuf pending = this.pending;
+
+            pending.writeVarint(start);
+            pending.writeVarint(before);
+            pending.writeVarint(length);
+
+            if (0 < length){
+                byte[] utf8 = Pool.Bytes(length);
+                try {
+                    Utf8.encode(text,ofs,count,utf8,0);
+
+                    pending.write(utf8,0,length);
+                }
+                finally {
+                    Pool.Release(utf8);
+                }
+            }
+            this.records += 1;
+        }
+        else
+            throw new IllegalArgumentException(String.format("Record (%d,%d,%d)",start,before,count));
+    }
+    /**
+     * Open the journal file.  When its header identifies the base
+     * file, its records are replayed over the target, which has the
+     * content of the base file.  Otherwise the journal is reset over
+     * the base file.  Records made before the open follow the
+     * replayed records.
+     *
+     * @return Number of records replayed
+     */
+    public int open(Target target)
+        throws IOException
+    {
+        synchronized(this.writer){
+            if (null == this.channel){
+
+                this.channel();
+
+                this.replay(target);
+
+                return this.replayed;
+            }
+            else
+                throw new IllegalStateException("Journal open");
+        }
+    }
+    /**
+     * Group commit: write the records collected since the last
+     * commit, and force them to the device unless not syncing.
+     * Deferred until the journal file is open.
+     */
+    public void commit()
+        throws IOException
+    {
+        synchronized(this.writer){
+            if (null == this.channel || (!this.channel.isOpen()))
+                return;
+
+            Bbuf writing;
+            synchronized(this){
+                writing = this.pending;
+                this.pending = this.writing;
+                this.writing = writing;
+            }
+            int many = writing.available();
+            if (0 < many){
+                try {
+                    writing.writeTo(this.channel);
+                }
+                finally {
+                    writing.resetall();
+                }
+                if (this.sync)
+                    this.channel.force(false);
+
+                synchronized(this){
+                    this.committed += many;
+                }
+            }
+        }
+    }
+    /**
+     * Following a save of the document to the base file, discard the
+     * records preceding the mark and identify the new base.  Records
+     * following the mark, for edits made while saving, are retained.
+     * The journal file is opened, without replay, when not open.
+     *
+     * @param mark Journal {@link #size()} at the document snapshot
+     * saved
+     */
+    public void reset(long mark)
+        throws IOException
+    {
+        synchronized(this.writer){
+
+            if (null == this.channel){
+
+                this.channel();
+
+                this.header();
+            }
+
+            this.commit();
+
+            long committed;
+            synchronized(this){
+                committed = this.committed;
+            }
+            mark = Math.max(HEADER,mark);
+
+            if (mark < committed && Integer.MAX_VALUE >= (committed-mark)){
+
+                int many = (int)(committed-mark);
+
+                Bbuf retain = new Bbuf(many);
+
+                this.channel.position(mark);
+
+                retain.readFrom(this.channel,many);
+
+                this.header();
+
+                retain.writeTo(this.channel);
+
+                this.channel.force(false);
+
+                synchronized(this){
+                    this.committed += many;
+                }
+            }
+            else
+                this.header();
+        }
+    }
+    /**
+     * Commit and close.  Records of a journal never opened are
+     * discarded.
+     */
+    public void close()
+        throws IOException
+    {
+        synchronized(this.writer){
+            if (null != this.channel){
+                try {
+                    this.commit();
+                }
+                finally {
+                    this.raf.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the journal file channel
+     */
+    private void channel()
+        throws IOException
+    {
+        File dir = this.file.getAbsoluteFile().getParentFile();
+        if (null != dir && (!dir.isDirectory()))
+            dir.mkdirs();
+
+        this.raf = new RandomAccessFile(this.file,"rw");
+        this.channel = this.raf.getChannel();
+    }
+    /**
+     * Truncate to a new header over the base file
+     */
+    private void header()
+        throws IOException
+    {
+        Bbuf header = new Bbuf(HEADER);
+        header.write4(MAGIC);
+        header.write8(this.base.length());
+        header.write8(this.base.lastModified());
+
+        this.channel.truncate(0L);
+        this.channel.position(0L);
+
+        header.writeTo(this.channel);
+
+        this.channel.force(true);
+
+        synchronized(this){
+            this.committed = HEADER;
+        }
+    }
+    /**
+     * Replay complete records over the target, and truncate a torn
+     * record or stale journal.
+     */
+    private void replay(Target target)
+        throws IOException
+    {
+        long size = this.channel.size();
+        if (HEADER <= size && Integer.MAX_VALUE >= size){
+
+            Bbuf in = new Bbuf((int)size);
+
+            in.readFrom(this.channel,(int)size);
+
+            if (MAGIC == in.read4() && this.base.length() == in.read8() &&
+                this.base.lastModified() == in.read8())
+            {
+                int valid = HEADER, count = 0;
+
+                final char[] text0 = new char[0];
+
+                while (0 < in.available()){
+                    try {
+                        int start = in.readVarint();
+                        int before = in.readVarint();
+                        int length = in.readVarint();
+
+                        if (length > in.available() || 0 > length ||
+                            0 > start || 0 > before || (start+before) > target.length())
+                        {
+                            break;
+                        }
+                        else if (0 < length){
+                            byte[] utf8 = in.readMany(length);
+                            char[] text = Pool.Chars(length);
+                            try {
+                                int chars = Utf8.decode(utf8,0,length,text,0);
+
+                                target.replace(start,(start+before),text,0,chars);
+                            }
+                            finally {
+                                Pool.Release(text);
+                            }
+                        }
+                        else {
+                            target.replace(start,(start+before),text0,0,0);
+                        }
+                        valid = (in.offset_read()+1);
+                        count += 1;
+                    }
+                    catch (IOException torn){
+                        break;
+                    }
+                    catch (IllegalStateException torn){
+                        break;
+                    }
+                }
+                this.channel.truncate(valid);
+                this.channel.position(valid);
+
+                synchronized(this){
+                    this.committed = valid;
+                    this.records += count;
+                }
+                this.replayed = count;
+                return;
+            }
+        }
+        this.header();
+    }
+}
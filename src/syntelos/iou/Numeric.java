@@ -0,0 +1,535 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.nio.CharBuffer;
+
+/**
+ * <p> Number parser over character ranges, without intermediate
+ * strings. </p>
+ *
+ * <p> Each parse method reads the longest number found from the
+ * start index, and leaves the index following it in {@link #end()}.
+ * Overflow and a range without digits are reported with a
+ * <code>`NumberFormatException'</code>.  Buffer indices are
+ * absolute, as for <code>`CharBuffer.get(int)'</code>. </p>
+ *
+ * <pre>
+ * Numeric num = Numeric.Local();
+ * long value = num.parseLong(line,ofs,end);
+ * ofs = num.end();
+ * </pre>
+ *
+ * <p> A decimal float of at most fifteen significant digits and a
+ * power of ten within the exact doubles is converted with one
+ * multiplication or division, which is exact.  Others fall back to
+ * <code>`Double.parseDouble'</code>. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use an instance per thread, as from {@link #Local()}. </p>
+ */
+public final class Numeric
+    extends Object
+{
+
+    private final static ThreadLocal<Numeric> Local = new ThreadLocal<Numeric>(){
+        protected Numeric initialValue(){
+            return new Numeric();
+        }
+    };
+
+    /**
+     * @return Instance for the calling thread
+     */
+    public static Numeric Local(){
+        return Local.get();
+    }
+
+    /**
+     * Digit values for ASCII, or negative one
+     */
+    private final static byte[] DIGIT = new byte[0x80];
+    static {
+        java.util.Arrays.fill(DIGIT,(byte)-1);
+        for (int d = 0; d < 10; d++){
+            DIGIT['0'+d] = (byte)d;
+        }
+        for (int d = 0; d < 26; d++){
+            DIGIT['a'+d] = (byte)(10+d);
+            DIGIT['A'+d] = (byte)(10+d);
+        }
+    }
+    /**
+     * Powers of ten represented exactly as doubles
+     */
+    private final static double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+
+    private char[] ary;
+
+    private int base;
+
+    private CharBuffer buf;
+
+    private CharSequence seq;
+
+    private int end;
+
+
+    public Numeric(){
+        super();
+    }
+
+
+    /**
+     * @return Index following the last number parsed
+     */
+    public int end(){
+        return this.end;
+    }
+
+    public int parseInt(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseInt(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public int parseInt(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseInt(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public int parseInt(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseInt(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long parseLong(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseLong(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long parseLong(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseLong(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long parseLong(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseLong(start,end,10);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    /**
+     * Unsigned hexadecimal, without prefix, of at most sixty four
+     * significant bits.
+     */
+    public long parseHex(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseHex(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long parseHex(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseHex(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long parseHex(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseHex(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    /**
+     * Decimal float with optional sign, fraction and exponent.
+     */
+    public double parseDouble(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseDouble(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public double parseDouble(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseDouble(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public double parseDouble(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.parseDouble(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    /**
+     * As {@link Chbuf#decode_int(java.lang.String)}: "0x", "0X" and
+     * "#" prefixes for hexadecimal, "0" for octal and otherwise
+     * decimal, with an optional sign.
+     */
+    public int decodeInt(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.toInt(this.decode(start,end));
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public int decodeInt(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.toInt(this.decode(start,end));
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public int decodeInt(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.toInt(this.decode(start,end));
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    /**
+     * As {@link Chbuf#decode_long(java.lang.String)}.
+     */
+    public long decodeLong(char[] src, int start, int end){
+        this.bind(src);
+        try {
+            return this.decode(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long decodeLong(CharBuffer src, int start, int end){
+        this.bind(src);
+        try {
+            return this.decode(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+    public long decodeLong(CharSequence src, int start, int end){
+        this.bind(src);
+        try {
+            return this.decode(start,end);
+        }
+        finally {
+            this.unbind();
+        }
+    }
+
+    private void bind(char[] src){
+        this.ary = src;
+        this.base = 0;
+    }
+    private void bind(CharBuffer src){
+        if (src.hasArray()){
+            this.ary = src.array();
+            this.base = src.arrayOffset();
+        }
+        else
+            this.buf = src;
+    }
+    private void bind(CharSequence src){
+        this.seq = src;
+    }
+    private void unbind(){
+        this.ary = null;
+        this.buf = null;
+        this.seq = null;
+    }
+    private char at(int idx){
+        if (null != this.ary)
+            return this.ary[this.base+idx];
+        else if (null != this.buf)
+            return this.buf.get(idx);
+        else
+            return this.seq.charAt(idx);
+    }
+    /**
+     * @return Digit value in the radix, or negative one
+     */
+    private int digit(int idx, int radix){
+        char ch = this.at(idx);
+        if (0x80 > ch){
+            int d = DIGIT[ch];
+            if (d < radix)
+                return d;
+        }
+        return -1;
+    }
+    private int parseInt(int start, int end, int radix){
+
+        return this.toInt(this.parseLong(start,end,radix));
+    }
+    private int toInt(long value){
+        if (Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE)
+            return (int)value;
+        else
+            throw new NumberFormatException("Integer overflow at "+this.end);
+    }
+    private long parseLong(int start, int end, int radix){
+        int idx = start;
+        boolean neg = false;
+        if (idx < end){
+            char ch = this.at(idx);
+            if ('-' == ch){
+                neg = true;
+                idx += 1;
+            }
+            else if ('+' == ch)
+                idx += 1;
+        }
+        return this.magnitude(start,idx,end,radix,neg);
+    }
+    /**
+     * Accumulate negatively, as <code>`Long.parseLong'</code>, for
+     * the range of negative values.
+     */
+    private long magnitude(int start, int idx, int end, int radix, boolean neg){
+        final long limit = (neg)?(Long.MIN_VALUE):(-Long.MAX_VALUE);
+        final long multmin = (limit/radix);
+        long re = 0L;
+        int digits = 0;
+        int d;
+        while (idx < end && -1 < (d = this.digit(idx,radix))){
+
+            if (re < multmin)
+                throw new NumberFormatException("Long overflow at "+start);
+            else {
+                re *= radix;
+
+                if (re < (limit+d))
+                    throw new NumberFormatException("Long overflow at "+start);
+                else {
+                    re -= d;
+                    idx += 1;
+                    digits += 1;
+                }
+            }
+        }
+        if (0 < digits){
+            this.end = idx;
+            return (neg)?(re):(-re);
+        }
+        else
+            throw new NumberFormatException("Number not found at "+start);
+    }
+    private long parseHex(int start, int end){
+        long re = 0L;
+        int idx = start;
+        int d;
+        while (idx < end && -1 < (d = this.digit(idx,16))){
+
+            if (0L != (re>>>60))
+                throw new NumberFormatException("Hex overflow at "+start);
+            else {
+                re = (re<<4)|d;
+                idx += 1;
+            }
+        }
+        if (start < idx){
+            this.end = idx;
+            return re;
+        }
+        else
+            throw new NumberFormatException("Number not found at "+start);
+    }
+    private long decode(int start, int end){
+        int idx = start;
+        boolean neg = false;
+        if (idx < end){
+            char ch = this.at(idx);
+            if ('-' == ch){
+                neg = true;
+                idx += 1;
+            }
+            else if ('+' == ch)
+                idx += 1;
+        }
+        if (idx < end){
+            char ch = this.at(idx);
+            if ('#' == ch)
+                return this.magnitude(start,(idx+1),end,16,neg);
+
+            else if ('0' == ch && (idx+1) < end){
+                ch = this.at(idx+1);
+                if ('x' == ch || 'X' == ch)
+                    return this.magnitude(start,(idx+2),end,16,neg);
+
+                else if (-1 < this.digit((idx+1),8))
+                    return this.magnitude(start,(idx+1),end,8,neg);
+            }
+        }
+        return this.magnitude(start,idx,end,10,neg);
+    }
+    private double parseDouble(int start, int end){
+        int idx = start;
+        boolean neg = false;
+        if (idx < end){
+            char ch = this.at(idx);
+            if ('-' == ch){
+                neg = true;
+                idx += 1;
+            }
+            else if ('+' == ch)
+                idx += 1;
+        }
+        long mantissa = 0L;
+        int significant = 0, digits = 0, scale = 0;
+        int d;
+        while (idx < end && -1 < (d = this.digit(idx,10))){
+            if (0 < significant || 0 < d){
+                if (significant < 19)
+                    mantissa = (mantissa*10L)+d;
+                else
+                    scale += 1;
+                significant += 1;
+            }
+            digits += 1;
+            idx += 1;
+        }
+        if (idx < end && '.' == this.at(idx)){
+            idx += 1;
+            while (idx < end && -1 < (d = this.digit(idx,10))){
+                if (0 < significant || 0 < d){
+                    if (significant < 19){
+                        mantissa = (mantissa*10L)+d;
+                        scale -= 1;
+                    }
+                    significant += 1;
+                }
+                else
+                    scale -= 1;
+                digits += 1;
+                idx += 1;
+            }
+        }
+        if (0 == digits)
+            throw new NumberFormatException("Number not found at "+start);
+        else {
+            if (idx < end){
+                char ch = this.at(idx);
+                if ('e' == ch || 'E' == ch){
+                    int exp = idx+1;
+                    boolean exp_neg = false;
+                    if (exp < end){
+                        ch = this.at(exp);
+                        if ('-' == ch){
+                            exp_neg = true;
+                            exp += 1;
+                        }
+                        else if ('+' == ch)
+                            exp += 1;
+                    }
+                    if (exp < end && -1 < this.digit(exp,10)){
+                        int e = 0;
+                        while (exp < end && -1 < (d = this.digit(exp,10))){
+                            if (e < 100000)
+                                e = (e*10)+d;
+                            exp += 1;
+                        }
+                        scale += (exp_neg)?(-e):(e);
+                        idx = exp;
+                    }
+                }
+            }
+            this.end = idx;
+
+            double re;
+            if (0L == mantissa)
+                re = 0.0;
+            else if (significant <= 15 && -22 <= scale && scale <= 22){
+                if (0 <= scale)
+                    re = (mantissa*POW10[scale]);
+                else
+                    re = (mantissa/POW10[-scale]);
+            }
+            else
+                return Double.parseDouble(this.string(start,idx));
+
+            return (neg)?(-re):(re);
+        }
+    }
+    private String string(int start, int end){
+        if (null != this.ary)
+            return new String(this.ary,(this.base+start),(end-start));
+        else {
+            StringBuilder re = new StringBuilder(end-start);
+            for (int idx = start; idx < end; idx++){
+                re.append(this.at(idx));
+            }
+            return re.toString();
+        }
+    }
+}
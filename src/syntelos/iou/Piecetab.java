@@ -0,0 +1,625 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 2018, John Pritchard, Syntelos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * <p> Piece table text document.  The original text is held read
+ * only, and inserted text is appended to an add buffer.  The
+ * document is a sequence of pieces over these two buffers, kept in a
+ * randomized balanced tree (treap) ordered by document offset. </p>
+ *
+ * <p> Each tree node caches the character and line feed counts of
+ * its subtree, and each buffer has a sorted index of its line feed
+ * positions, so that edits cost O(log pieces), and line to offset
+ * and offset to line lookups cost O(log n). </p>
+ *
+ * <p> Lines are delimited by <code>'\n'</code>.  Line numbers and
+ * offsets are from zero. </p>
+ *
+ * <p> This is a standalone document model.  The android editor keeps
+ * its text in the <code>`Editable'</code> of its
+ * <code>`EditText'</code>, and does not employ this class. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use the instance as a synchronization monitor when shared
+ * among threads. </p>
+ */
+public class Piecetab
+    extends Object
+    implements CharSequence
+{
+    /**
+     * Tree node for one piece of either buffer.
+     */
+    private final static class Node {
+
+	final boolean add;
+
+	int start, len, lf;
+
+	final int prio;
+
+	Node left, right;
+	/**
+	 * Subtree character count
+	 */
+	int size;
+	/**
+	 * Subtree line feed count
+	 */
+	int lines;
+
+
+	Node(boolean add, int start, int len, int lf, int prio){
+	    super();
+	    this.add = add;
+	    this.start = start;
+	    this.len = len;
+	    this.lf = lf;
+	    this.prio = prio;
+	    this.size = len;
+	    this.lines = lf;
+	}
+
+
+	void update(){
+	    int size = this.len, lines = this.lf;
+	    Node n = this.left;
+	    if (null != n){
+		size += n.size;
+		lines += n.lines;
+	    }
+	    n = this.right;
+	    if (null != n){
+		size += n.size;
+		lines += n.lines;
+	    }
+	    this.size = size;
+	    this.lines = lines;
+	}
+    }
+
+    private final static int GF = 0x400;//(1024)
+
+
+    private final CharSequence orig;
+
+    private final int[] orig_lf;
+
+    private char[] add = new char[GF];
+
+    private int add_len;
+
+    private int[] add_lf = new int[0x40];
+
+    private int add_lf_len;
+
+    private Node root;
+
+    private final java.util.Random prio = new java.util.Random();
+
+
+    public Piecetab(){
+	this(null);
+    }
+    /**
+     * @param orig Original text, not copied.  The caller must not
+     * modify it after construction.
+     */
+    public Piecetab(CharSequence orig){
+	super();
+	if (null == orig){
+	    this.orig = "";
+	    this.orig_lf = new int[0];
+	}
+	else {
+	    this.orig = orig;
+	    this.orig_lf = Index(orig);
+
+	    int len = orig.length();
+	    if (0 < len){
+		this.root = new Node(false,0,len,this.orig_lf.length,this.prio.nextInt());
+	    }
+	}
+    }
+
+
+    public int length(){
+	Node root = this.root;
+	if (null != root)
+	    return root.size;
+	else
+	    return 0;
+    }
+    /**
+     * @return Number of lines, which is one more than the number of
+     * line feeds.
+     */
+    public int lines(){
+	Node root = this.root;
+	if (null != root)
+	    return (root.lines+1);
+	else
+	    return 1;
+    }
+    /**
+     * @return Number of pieces
+     */
+    public int pieces(){
+	return Count(this.root);
+    }
+    public char charAt(int idx){
+	if (0 > idx || idx >= this.length())
+	    throw new StringIndexOutOfBoundsException(idx);
+	else {
+	    Node n = this.root;
+	    while (true){
+		Node l = n.left;
+		int ls = (null != l)?(l.size):(0);
+		if (idx < ls){
+		    n = l;
+		}
+		else {
+		    idx -= ls;
+		    if (idx < n.len){
+			if (n.add)
+			    return this.add[n.start+idx];
+			else
+			    return this.orig.charAt(n.start+idx);
+		    }
+		    else {
+			idx -= n.len;
+			n = n.right;
+		    }
+		}
+	    }
+	}
+    }
+    /**
+     * Copy content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive) into the destination at
+     * <code>`dst_ofs'</code>, as in <code>String.getChars</code>.
+     */
+    public void getChars(int start, int end, char[] dst, int dst_ofs){
+	if (0 > start || start > end || end > this.length())
+	    throw new StringIndexOutOfBoundsException(start);
+	else if (start < end){
+	    this.copy(this.root,0,start,end,dst,dst_ofs);
+	}
+    }
+    public CharSequence subSequence(int start, int end){
+	int len = (end-start);
+	char[] cary = new char[len];
+	this.getChars(start,end,cary,0);
+	return new String(cary,0,len);
+    }
+    public String toString(){
+	int len = this.length();
+	char[] cary = new char[len];
+	this.getChars(0,len,cary,0);
+	return new String(cary,0,len);
+    }
+    /**
+     * @param line Line number from zero
+     *
+     * @return Document offset of the first character of the line
+     */
+    public int lineStart(int line){
+	if (0 == line)
+	    return 0;
+	else if (0 > line || line >= this.lines())
+	    throw new IndexOutOfBoundsException(String.valueOf(line));
+	else {
+	    /*
+	     * Find the line feed number 'line' (from one), and return
+	     * the offset following it.
+	     */
+	    int base = 0;
+	    Node n = this.root;
+	    while (true){
+		Node l = n.left;
+		int ll = (null != l)?(l.lines):(0);
+		if (line <= ll){
+		    n = l;
+		}
+		else {
+		    line -= ll;
+		    if (null != l)
+			base += l.size;
+
+		    if (line <= n.lf){
+			int[] lfs = (n.add)?(this.add_lf):(this.orig_lf);
+			int x = Lower(lfs,this.lfs(n.add),n.start)+(line-1);
+
+			return (base+(lfs[x]-n.start)+1);
+		    }
+		    else {
+			line -= n.lf;
+			base += n.len;
+			n = n.right;
+		    }
+		}
+	    }
+	}
+    }
+    /**
+     * @param ofs Document offset, from zero through length inclusive
+     *
+     * @return Line number containing the offset
+     */
+    public int lineOf(int ofs){
+	if (0 > ofs || ofs > this.length())
+	    throw new StringIndexOutOfBoundsException(ofs);
+	else {
+	    int line = 0;
+	    Node n = this.root;
+	    while (null != n){
+		Node l = n.left;
+		int ls = (null != l)?(l.size):(0);
+		if (ofs < ls){
+		    n = l;
+		}
+		else {
+		    ofs -= ls;
+		    if (null != l)
+			line += l.lines;
+
+		    if (ofs < n.len){
+
+			return (line+this.lf(n.add,n.start,n.start+ofs));
+		    }
+		    else {
+			line += n.lf;
+			ofs -= n.len;
+			n = n.right;
+		    }
+		}
+	    }
+	    return line;
+	}
+    }
+    public Piecetab append(CharSequence s){
+
+	return this.insert(this.length(),s);
+    }
+    /**
+     * Insert text at the document offset.
+     */
+    public Piecetab insert(int ofs, CharSequence s){
+	if (0 > ofs || ofs > this.length())
+	    throw new StringIndexOutOfBoundsException(ofs);
+	else if (null != s){
+	    int len = s.length();
+	    if (0 < len){
+		int start = this.add_len;
+		int lf = this.store(s,len);
+		/*
+		 * Typing extends the last piece of the add buffer in
+		 * place.
+		 */
+		if (!this.extend(this.root,ofs,start,len,lf)){
+
+		    Node n = new Node(true,start,len,lf,this.prio.nextInt());
+
+		    Node[] lr = this.split(this.root,ofs);
+
+		    this.root = Merge(Merge(lr[0],n),lr[1]);
+		}
+	    }
+	}
+	return this;
+    }
+    /**
+     * Delete content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive).
+     */
+    public Piecetab delete(int start, int end){
+	int len = this.length();
+	if (end > len)
+	    end = len;
+
+	if (0 > start || start > end)
+	    throw new StringIndexOutOfBoundsException(start);
+	else if (start < end){
+
+	    Node[] ac = this.split(this.root,end);
+
+	    Node[] ab = this.split(ac[0],start);
+
+	    this.root = Merge(ab[0],ac[1]);
+	}
+	return this;
+    }
+    /**
+     * Replace content from <code>`start'</code> (inclusive) to
+     * <code>`end'</code> (exclusive) with the argument text.
+     */
+    public Piecetab replace(int start, int end, CharSequence s){
+	this.delete(start,end);
+	return this.insert(start,s);
+    }
+
+    /**
+     * Copy into the add buffer, and index its line feeds.
+     *
+     * @return Number of line feeds
+     */
+    private int store(CharSequence s, int len){
+	int start = this.add_len;
+	int nlen = (start+len);
+	if (nlen > this.add.length){
+	    char[] copier = new char[Math.max(nlen+GF,(this.add.length<<1))];
+	    System.arraycopy(this.add,0,copier,0,start);
+	    this.add = copier;
+	}
+	char[] add = this.add;
+	if (s instanceof String){
+	    ((String)s).getChars(0,len,add,start);
+	}
+	else {
+	    for (int cc = 0; cc < len; cc++){
+		add[start+cc] = s.charAt(cc);
+	    }
+	}
+	this.add_len = nlen;
+
+	int lf = 0;
+	for (int cc = start; cc < nlen; cc++){
+	    if ('\n' == add[cc]){
+		if (this.add_lf_len == this.add_lf.length){
+		    int[] copier = new int[this.add_lf_len<<1];
+		    System.arraycopy(this.add_lf,0,copier,0,this.add_lf_len);
+		    this.add_lf = copier;
+		}
+		this.add_lf[this.add_lf_len++] = cc;
+		lf += 1;
+	    }
+	}
+	return lf;
+    }
+    /**
+     * Extend the add buffer piece ending at the document offset when
+     * it also ends the add buffer before the argument text.
+     */
+    private boolean extend(Node n, int ofs, int start, int len, int lf){
+	if (null == n)
+	    return false;
+	else {
+	    Node l = n.left;
+	    int ls = (null != l)?(l.size):(0);
+	    boolean re;
+	    if (ofs <= ls){
+		re = (0 < ofs && this.extend(l,ofs,start,len,lf));
+	    }
+	    else if (ofs == (ls+n.len)){
+		if (n.add && start == (n.start+n.len)){
+		    n.len += len;
+		    n.lf += lf;
+		    re = true;
+		}
+		else {
+		    re = false;
+		}
+	    }
+	    else if (ofs > (ls+n.len)){
+		re = this.extend(n.right,(ofs-ls-n.len),start,len,lf);
+	    }
+	    else {
+		re = false;
+	    }
+
+	    if (re){
+		n.size += len;
+		n.lines += lf;
+	    }
+	    return re;
+	}
+    }
+    /**
+     * @return Left subtree with the first <code>`ofs'</code>
+     * characters, and right subtree with the remainder
+     */
+    private Node[] split(Node n, int ofs){
+	if (null == n){
+	    return new Node[2];
+	}
+	else {
+	    Node l = n.left;
+	    int ls = (null != l)?(l.size):(0);
+	    if (ofs <= ls){
+		Node[] lr = this.split(l,ofs);
+		n.left = lr[1];
+		n.update();
+		lr[1] = n;
+		return lr;
+	    }
+	    else if (ofs >= (ls+n.len)){
+		Node[] lr = this.split(n.right,(ofs-ls-n.len));
+		n.right = lr[0];
+		n.update();
+		lr[0] = n;
+		return lr;
+	    }
+	    else {
+		int k = (ofs-ls);
+		int tail_start = (n.start+k);
+		int tail_len = (n.len-k);
+		int tail_lf = this.lf(n.add,tail_start,(tail_start+tail_len));
+
+		Node tail = new Node(n.add,tail_start,tail_len,tail_lf,this.prio.nextInt());
+
+		n.len = k;
+		n.lf -= tail_lf;
+
+		Node r = Merge(tail,n.right);
+		n.right = null;
+		n.update();
+
+		return new Node[]{n,r};
+	    }
+	}
+    }
+    private void copy(Node n, int base, int start, int end, char[] dst, int dst_ofs){
+	while (null != n){
+	    Node l = n.left;
+	    int ls = (null != l)?(l.size):(0);
+	    int ns = (base+ls);
+	    int ne = (ns+n.len);
+
+	    if (start < ns){
+		this.copy(l,base,start,Math.min(end,ns),dst,dst_ofs);
+	    }
+	    if (start < ne && end > ns){
+		int a = Math.max(start,ns);
+		int z = Math.min(end,ne);
+		int o = (n.start+(a-ns));
+		int d = (dst_ofs+(a-start));
+		if (n.add){
+		    System.arraycopy(this.add,o,dst,d,(z-a));
+		}
+		else if (this.orig instanceof String){
+		    ((String)this.orig).getChars(o,o+(z-a),dst,d);
+		}
+		else {
+		    CharSequence orig = this.orig;
+		    for (int cc = 0, cz = (z-a); cc < cz; cc++){
+			dst[d+cc] = orig.charAt(o+cc);
+		    }
+		}
+	    }
+	    if (end > ne){
+		base = ne;
+		n = n.right;
+	    }
+	    else {
+		return;
+	    }
+	}
+    }
+    private int lfs(boolean add){
+	if (add)
+	    return this.add_lf_len;
+	else
+	    return this.orig_lf.length;
+    }
+    /**
+     * @return Number of line feeds in the buffer range
+     */
+    private int lf(boolean add, int start, int end){
+	if (add){
+	    int z = this.add_lf_len;
+	    return (Lower(this.add_lf,z,end)-Lower(this.add_lf,z,start));
+	}
+	else {
+	    int z = this.orig_lf.length;
+	    return (Lower(this.orig_lf,z,end)-Lower(this.orig_lf,z,start));
+	}
+    }
+
+    /**
+     * Read file into a new document, with one decoding read.
+     */
+    public final static Piecetab read(File txt)
+	throws IOException
+    {
+	return new Piecetab(Chbuf.read(txt));
+    }
+    /**
+     * @return Index of the first element not less than the key
+     */
+    private final static int Lower(int[] a, int z, int key){
+	int lo = 0, hi = z;
+	while (lo < hi){
+	    int m = (lo+hi)>>>1;
+	    if (a[m] < key)
+		lo = m+1;
+	    else
+		hi = m;
+	}
+	return lo;
+    }
+    /**
+     * @return Sorted positions of line feeds in the text
+     */
+    private final static int[] Index(CharSequence s){
+	int len = s.length();
+	int[] re = new int[0x40];
+	int rz = 0;
+	if (s instanceof CharBuffer && ((CharBuffer)s).hasArray()){
+	    CharBuffer cb = (CharBuffer)s;
+	    char[] ary = cb.array();
+	    int o = (cb.arrayOffset()+cb.position());
+	    for (int cc = 0; cc < len; cc++){
+		if ('\n' == ary[o+cc]){
+		    if (rz == re.length){
+			int[] copier = new int[rz<<1];
+			System.arraycopy(re,0,copier,0,rz);
+			re = copier;
+		    }
+		    re[rz++] = cc;
+		}
+	    }
+	}
+	else {
+	    for (int cc = 0; cc < len; cc++){
+		if ('\n' == s.charAt(cc)){
+		    if (rz == re.length){
+			int[] copier = new int[rz<<1];
+			System.arraycopy(re,0,copier,0,rz);
+			re = copier;
+		    }
+		    re[rz++] = cc;
+		}
+	    }
+	}
+	if (rz == re.length)
+	    return re;
+	else {
+	    int[] copier = new int[rz];
+	    System.arraycopy(re,0,copier,0,rz);
+	    return copier;
+	}
+    }
+    private final static Node Merge(Node a, Node b){
+	if (null == a)
+	    return b;
+	else if (null == b)
+	    return a;
+	else if (a.prio > b.prio){
+	    a.right = Merge(a.right,b);
+	    a.update();
+	    return a;
+	}
+	else {
+	    b.left = Merge(a,b.left);
+	    b.update();
+	    return b;
+	}
+    }
+    private final static int Count(Node n){
+	if (null == n)
+	    return 0;
+	else
+	    return (1+Count(n.left)+Count(n.right));
+    }
+}
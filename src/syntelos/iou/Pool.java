@@ -0,0 +1,412 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> Scratch buffer pool for byte and char arrays, and direct byte
+ * buffers. </p>
+ *
+ * <p> Sizes are rounded up to power of two classes from {@link #MIN}
+ * to {@link #MAX}.  Each thread has a small cache per class in front
+ * of a shared, lock free pool per class.  The shared pool is bounded
+ * to about {@link #SHARED} bytes per class, beyond which released
+ * buffers are dropped to the collector.  Requests beyond {@link #MAX}
+ * are not pooled. </p>
+ *
+ * <pre>
+ * byte[] iob = Pool.Bytes(COPY);
+ * try {
+ *     ...
+ * }
+ * finally {
+ *     Pool.Release(iob);
+ * }
+ * </pre>
+ *
+ * <p> A buffer must be released once, and not used after its
+ * release.  With {@link #Track(boolean)} enabled, the pool records
+ * the acquire site of each buffer until its release, for {@link
+ * #Leaks(java.io.PrintStream)}. </p>
+ *
+ * <h3>MT Safe</h3>
+ */
+public final class Pool
+    extends Object
+{
+
+    public final static int MIN = 0x40;//(64)
+
+    public final static int MAX = 0x100000;//(1M)
+
+    public final static int SHARED = 0x400000;//(4M)
+
+    private final static int MIN_SHIFT = 6, MAX_SHIFT = 20;
+
+    private final static int CLASSES = (MAX_SHIFT-MIN_SHIFT+1);
+
+    /**
+     * Thread cache depth per class
+     */
+    private final static int LOCAL = 4;
+
+
+    private final static Shelf<byte[]>[] BYTES = Shelves();
+
+    private final static Shelf<char[]>[] CHARS = Shelves();
+
+    private final static Shelf<ByteBuffer>[] DIRECT = Shelves();
+
+    private final static ThreadLocal<Local> Cache = new ThreadLocal<Local>(){
+        protected Local initialValue(){
+            return new Local();
+        }
+    };
+
+    private static volatile boolean Track = false;
+
+    private final static java.util.Map<Object,Throwable> Acquired =
+        java.util.Collections.synchronizedMap(new java.util.IdentityHashMap<Object,Throwable>());
+    /**
+     * Direct buffers allocated in the size classes, weakly by
+     * identity, so that a view of a buffer is not pooled
+     */
+    private final static java.util.Map<Issue,Boolean> Issued =
+        new java.util.concurrent.ConcurrentHashMap<Issue,Boolean>();
+
+    private final static java.lang.ref.ReferenceQueue<ByteBuffer> Collected =
+        new java.lang.ref.ReferenceQueue<ByteBuffer>();
+
+
+    /**
+     * @param size Minimum length
+     *
+     * @return Array of at least the requested length, with arbitrary
+     * content
+     */
+    public static byte[] Bytes(int size){
+        int sc = Class(size);
+        byte[] re = null;
+        if (-1 < sc){
+            Local local = Cache.get();
+            int top = local.bytes_top[sc];
+            if (0 < top){
+                re = local.bytes[sc][--top];
+                local.bytes[sc][top] = null;
+                local.bytes_top[sc] = top;
+            }
+            else
+                re = BYTES[sc].take();
+
+            if (null == re)
+                re = new byte[1<<(sc+MIN_SHIFT)];
+        }
+        else
+            re = new byte[size];
+
+        return Acquire(re);
+    }
+    /**
+     * @param size Minimum length
+     *
+     * @return Array of at least the requested length, with arbitrary
+     * content
+     */
+    public static char[] Chars(int size){
+        int sc = Class(size);
+        char[] re = null;
+        if (-1 < sc){
+            Local local = Cache.get();
+            int top = local.chars_top[sc];
+            if (0 < top){
+                re = local.chars[sc][--top];
+                local.chars[sc][top] = null;
+                local.chars_top[sc] = top;
+            }
+            else
+                re = CHARS[sc].take();
+
+            if (null == re)
+                re = new char[1<<(sc+MIN_SHIFT)];
+        }
+        else
+            re = new char[size];
+
+        return Acquire(re);
+    }
+    /**
+     * @param size Minimum capacity
+     *
+     * @return Cleared direct buffer with limit at its capacity, of at
+     * least the requested capacity
+     */
+    public static ByteBuffer Direct(int size){
+        int sc = Class(size);
+        ByteBuffer re = null;
+        if (-1 < sc){
+            Local local = Cache.get();
+            int top = local.direct_top[sc];
+            if (0 < top){
+                re = local.direct[sc][--top];
+                local.direct[sc][top] = null;
+                local.direct_top[sc] = top;
+            }
+            else
+                re = DIRECT[sc].take();
+
+            if (null == re)
+                re = Issue(ByteBuffer.allocateDirect(1<<(sc+MIN_SHIFT)));
+            else
+                re.clear();
+        }
+        else
+            re = ByteBuffer.allocateDirect(size);
+
+        return Acquire(re);
+    }
+    /**
+     * Return an array acquired from {@link #Bytes(int)}.  Null is
+     * ignored, as are arrays outside the size classes.
+     */
+    public static void Release(byte[] buf){
+        if (null != buf){
+            Released(buf);
+            int sc = Exact(buf.length);
+            if (-1 < sc){
+                Local local = Cache.get();
+                int top = local.bytes_top[sc];
+                if (top < LOCAL){
+                    local.bytes[sc][top] = buf;
+                    local.bytes_top[sc] = (top+1);
+                }
+                else
+                    BYTES[sc].give(buf);
+            }
+        }
+    }
+    /**
+     * Return an array acquired from {@link #Chars(int)}.  Null is
+     * ignored, as are arrays outside the size classes.
+     */
+    public static void Release(char[] buf){
+        if (null != buf){
+            Released(buf);
+            int sc = Exact(buf.length);
+            if (-1 < sc){
+                Local local = Cache.get();
+                int top = local.chars_top[sc];
+                if (top < LOCAL){
+                    local.chars[sc][top] = buf;
+                    local.chars_top[sc] = (top+1);
+                }
+                else
+                    CHARS[sc].give(buf);
+            }
+        }
+    }
+    /**
+     * Return a buffer acquired from {@link #Direct(int)}.  Null is
+     * ignored, as are heap buffers, views (slices and duplicates) and
+     * buffers outside the size classes.
+     */
+    public static void Release(ByteBuffer buf){
+        if (null != buf){
+            Released(buf);
+            int sc = Exact(buf.capacity());
+            if (-1 < sc && buf.isDirect() && (!buf.isReadOnly()) &&
+                Issued.containsKey(new Issue(buf,null)))
+            {
+                Local local = Cache.get();
+                int top = local.direct_top[sc];
+                if (top < LOCAL){
+                    local.direct[sc][top] = buf;
+                    local.direct_top[sc] = (top+1);
+                }
+                else
+                    DIRECT[sc].give(buf);
+            }
+        }
+    }
+    /**
+     * Enable or disable leak tracking.  Disabling discards the
+     * records.
+     */
+    public static void Track(boolean enable){
+        Track = enable;
+        if (!enable)
+            Acquired.clear();
+    }
+    /**
+     * @return Number of buffers acquired and not released while
+     * tracking
+     */
+    public static int Leaks(){
+        return Acquired.size();
+    }
+    /**
+     * Print the acquire site of each buffer acquired and not
+     * released while tracking.
+     *
+     * @return Number of buffers
+     */
+    public static int Leaks(java.io.PrintStream out){
+        Throwable[] sites;
+        synchronized(Acquired){
+            sites = Acquired.values().toArray(new Throwable[Acquired.size()]);
+        }
+        for (Throwable site : sites){
+            site.printStackTrace(out);
+        }
+        return sites.length;
+    }
+
+    private static <T> T Acquire(T buf){
+        if (Track)
+            Acquired.put(buf,new Throwable("Pool acquire"));
+
+        return buf;
+    }
+    private static void Released(Object buf){
+        if (Track)
+            Acquired.remove(buf);
+    }
+    /**
+     * @return Size class for the request, or negative one beyond
+     * the maximum
+     */
+    private static int Class(int size){
+        if (size <= MIN)
+            return 0;
+        else if (size <= MAX)
+            return (32-Integer.numberOfLeadingZeros(size-1))-MIN_SHIFT;
+        else
+            return -1;
+    }
+    /**
+     * @return Size class for the pooled length, or negative one
+     */
+    private static int Exact(int size){
+        if (MIN <= size && size <= MAX && 0 == (size & (size-1)))
+            return (Integer.numberOfTrailingZeros(size)-MIN_SHIFT);
+        else
+            return -1;
+    }
+    /**
+     * Register a direct buffer allocated in a size class, and purge
+     * the registrations of collected buffers.
+     */
+    private static ByteBuffer Issue(ByteBuffer buf){
+        java.lang.ref.Reference<? extends ByteBuffer> gone;
+        while (null != (gone = Collected.poll())){
+            Issued.remove(gone);
+        }
+        Issued.put(new Issue(buf,Collected),Boolean.TRUE);
+        return buf;
+    }
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private static <T> Shelf<T>[] Shelves(){
+        Shelf<T>[] list = new Shelf[CLASSES];
+        for (int sc = 0; sc < CLASSES; sc++){
+            list[sc] = new Shelf<T>(Math.max(2,(SHARED>>>(sc+MIN_SHIFT))));
+        }
+        return list;
+    }
+    /**
+     * Weak identity key of a direct buffer.
+     */
+    private final static class Issue
+        extends java.lang.ref.WeakReference<ByteBuffer>
+    {
+        private final int hash;
+
+        Issue(ByteBuffer buf, java.lang.ref.ReferenceQueue<ByteBuffer> queue){
+            super(buf,queue);
+            this.hash = System.identityHashCode(buf);
+        }
+
+        public int hashCode(){
+            return this.hash;
+        }
+        public boolean equals(Object that){
+            if (this == that)
+                return true;
+            else if (that instanceof Issue){
+                Object buf = this.get();
+                return (null != buf && buf == ((Issue)that).get());
+            }
+            else
+                return false;
+        }
+    }
+    /**
+     * Shared pool for one size class.
+     */
+    private final static class Shelf<T> {
+
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final int limit;
+
+
+        Shelf(int limit){
+            super();
+            this.limit = limit;
+        }
+
+        T take(){
+            T re = this.queue.poll();
+            if (null != re)
+                this.count.decrementAndGet();
+            return re;
+        }
+        void give(T buf){
+            if (this.count.incrementAndGet() <= this.limit)
+                this.queue.offer(buf);
+            else
+                this.count.decrementAndGet();
+        }
+    }
+    /**
+     * Thread cache.
+     */
+    private final static class Local {
+
+        final byte[][][] bytes = new byte[CLASSES][LOCAL][];
+
+        final int[] bytes_top = new int[CLASSES];
+
+        final char[][][] chars = new char[CLASSES][LOCAL][];
+
+        final int[] chars_top = new int[CLASSES];
+
+        final ByteBuffer[][] direct = new ByteBuffer[CLASSES][LOCAL];
+
+        final int[] direct_top = new int[CLASSES];
+    }
+
+    private Pool(){
+        super();
+    }
+}
@@ -23,9 +23,67 @@ import java.nio.CharBuffer;
 
 /**
  * Following the "octal dump" (unix "od") concept.
+ *
+ * <p> Rows of twenty bytes are rendered from precomputed cell tables
+ * into a reusable block of lines, and written a block at a time to
+ * a print stream, appendable or channel. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use the instance as a synchronization monitor when shared
+ * among threads. </p>
  */
 public class Printer {
 
+    /**
+     * Bytes per row.
+     */
+    public final static int ROW = 20;
+
+    /**
+     * Rows per rendered block.
+     */
+    private final static int BLOCK = 64;
+
+    private final static char[] EOL = System.getProperty("line.separator","\n").toCharArray();
+
+    private final static char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Four character ASC cells for each byte value, as " %3s", " %3c"
+     * or " %03X".
+     */
+    private final static char[] ASC_CELLS = new char[0x100<<2];
+
+    /**
+     * Three character HEX cells for each byte value, as " %02X".
+     */
+    private final static char[] HEX_CELLS = new char[0x100*3];
+
+    static {
+	for (int ch = 0; ch < 0x100; ch++){
+	    String cell;
+	    ASCII as = ASCII.valueOf(ch);
+	    if (null != as)
+		cell = as.name();
+	    else if (0x20 < ch && 0x7F > ch)
+		cell = String.valueOf((char)ch);
+	    else
+		cell = new String(new char[]{DIGITS[ch>>>8],DIGITS[(ch>>>4)&0xf],DIGITS[ch&0xf]});
+
+	    int a = (ch<<2);
+	    ASC_CELLS[a] = ' ';
+	    for (int cc = 1, pad = (4-cell.length()); cc < 4; cc++){
+		ASC_CELLS[a+cc] = (cc < pad)?(' '):(cell.charAt(cc-pad));
+	    }
+
+	    int h = (ch*3);
+	    HEX_CELLS[h] = ' ';
+	    HEX_CELLS[h+1] = DIGITS[ch>>>4];
+	    HEX_CELLS[h+2] = DIGITS[ch&0xf];
+	}
+    }
+
     /**
      * An ASCII named character table.
      */
@@ -206,7 +264,16 @@ public class Printer {
 
     public final Content content;
 
-    private int p = 0;
+    private long p = 0L;
+
+    /**
+     * Reusable block of rendered lines
+     */
+    private final char[] block = new char[BLOCK*(20+(ROW<<2)+EOL.length)];
+
+    private final CharBuffer block_view = CharBuffer.wrap(this.block);
+
+    private byte[] block_ascii;
 
 
     public Printer(Offset o, Content c){
@@ -285,34 +352,209 @@ public class Printer {
 
 	this.seek(0);
     }
-    public void seek(int p){
+    public void seek(long p){
 
 	this.p = p;
     }
+    /**
+     * @return Offset of the next row
+     */
+    public long tell(){
+
+	return this.p;
+    }
     public void print(byte[] b, int i, int l){
 
 	this.print(b,i,l,System.out);
     }
+    /**
+     * Print rows of the bytes from <code>`i'</code> (inclusive) to
+     * <code>`i+l'</code> (exclusive), and a final offset line.
+     */
     public void print(byte[] b, int i, int l, PrintStream out){
+	try {
+	    this.print(b,i,l,(Appendable)out);
+	}
+	catch (java.io.IOException ignore){
+	    throw new IllegalStateException("Not reached");
+	}
+    }
+    /**
+     * Append rows, as for {@link #print(byte[],int,int,PrintStream)}.
+     */
+    public void print(byte[] b, int i, int l, Appendable out)
+	throws java.io.IOException
+    {
+	this.rows(b,i,l,out);
 
+	this.end(out);
+    }
+    /**
+     * Append rows of the bytes from <code>`i'</code> (inclusive) to
+     * <code>`i+l'</code> (exclusive), without the final offset line,
+     * for rendering a file a page at a time.
+     */
+    public void rows(byte[] b, int i, int l, Appendable out)
+	throws java.io.IOException
+    {
 	int z = (i+l);
 
-	int c = 0;
+	CharBuffer view = this.block_view;
 
 	while (i < z){
 
-	    offset(out);
+	    int n = this.render(b,i,z);
 
-	    for (c = 0; c < 20 && i < z; c++,p++,i++){
+	    view.limit(n);
+	    view.position(0);
+	    out.append(view);
 
-		content( (b[i] & 0xFF), out);
-	    }
+	    i = this.rendered(i,z);
+	}
+    }
+    /**
+     * Append the final offset line.
+     */
+    public void end(Appendable out)
+	throws java.io.IOException
+    {
+	CharBuffer view = this.block_view;
+
+	int n = this.eol(this.renderOffset(0));
+
+	view.limit(n);
+	view.position(0);
+	out.append(view);
+    }
+    /**
+     * Write rows in ASCII, as for {@link
+     * #print(byte[],int,int,PrintStream)}.  The channel is not
+     * closed.
+     */
+    public void print(byte[] b, int i, int l, java.nio.channels.WritableByteChannel out)
+	throws java.io.IOException
+    {
+	if (null == this.block_ascii)
+	    this.block_ascii = new byte[this.block.length];
+
+	java.nio.ByteBuffer bb = java.nio.ByteBuffer.wrap(this.block_ascii);
+
+	int z = (i+l);
+
+	while (i < z){
+
+	    int n = this.render(b,i,z);
+
+	    this.write(n,bb,out);
+
+	    i = this.rendered(i,z);
+	}
+
+	int n = this.eol(this.renderOffset(0));
+
+	this.write(n,bb,out);
+    }
+    /**
+     * Render a block of rows into the line block.
+     *
+     * @return Number of characters rendered
+     */
+    private int render(byte[] b, int i, int z){
+
+	final char[] block = this.block;
+	final boolean asc = (Content.ASC == this.content);
+	final char[] cells = (asc)?(ASC_CELLS):(HEX_CELLS);
+	final int width = (asc)?(4):(3);
+
+	int n = 0;
+
+	for (int row = 0; row < BLOCK && i < z; row++){
+
+	    n = this.renderOffset(n);
+
+	    int end = Math.min(z,(i+ROW));
+
+	    this.p += (end-i);
+
+	    for (; i < end; i++){
+
+		int c = ((b[i] & 0xFF)*width);
 
-	    out.println();
+		block[n++] = cells[c++];
+		block[n++] = cells[c++];
+		block[n++] = cells[c++];
+		if (asc)
+		    block[n++] = cells[c];
+	    }
+	    n = this.eol(n);
 	}
+	return n;
+    }
+    /**
+     * @return Source index following the block rendered from
+     * <code>`i'</code>
+     */
+    private int rendered(int i, int z){
 
-	offset(out);
-	out.println();
+	return (int)Math.min((long)z,(i+((long)BLOCK*ROW)));
+    }
+    /**
+     * Render the offset into the line block, without a line end.
+     *
+     * @return Offset following the rendered characters
+     */
+    private int renderOffset(int n){
+	final char[] block = this.block;
+	long p = this.p;
+
+	switch(this.offset){
+	case DEC:
+	    if (0L <= p){
+		int w = 7;
+		for (long q = 10000000L; w < 19 && q <= p; q *= 10L){
+		    w += 1;
+		}
+		for (int cc = (n+w-1); cc >= n; cc--){
+		    block[cc] = (char)('0'+(int)(p % 10L));
+		    p /= 10L;
+		}
+		return (n+w);
+	    }
+	    else {
+		String s = String.format("%07d",p);
+		s.getChars(0,s.length(),block,n);
+		return (n+s.length());
+	    }
+	case HEX:{
+	    int w = (0L == (p>>>32))?(8):(16);
+	    for (int cc = (n+w-1); cc >= n; cc--){
+		block[cc] = DIGITS[(int)p & 0xf];
+		p >>>= 4;
+	    }
+	    return (n+w);
+	}
+	default:
+	    throw new InternalError(this.offset.name());
+	}
+    }
+    private int eol(int n){
+	char[] eol = EOL;
+	for (int cc = 0; cc < eol.length; cc++){
+	    this.block[n++] = eol[cc];
+	}
+	return n;
+    }
+    private void write(int n, java.nio.ByteBuffer bb, java.nio.channels.WritableByteChannel out)
+	throws java.io.IOException
+    {
+	char[] src = this.block;
+	byte[] dst = this.block_ascii;
+	for (int cc = 0; cc < n; cc++){
+	    dst[cc] = (byte)src[cc];
+	}
+	bb.limit(n);
+	bb.position(0);
+	Chbuf.Drain(bb,out);
     }
 
 
@@ -0,0 +1,500 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p> Bounded ring byte buffer for streaming pipelines, with the
+ * reading and writing API of {@link Bbuf}. </p>
+ *
+ * <p> The capacity is fixed, and reading reclaims space for writing,
+ * so that a pipeline over unbounded input runs in constant memory.
+ * Reads and writes wrap around the end of the internal array. </p>
+ *
+ * <h3>Backpressure</h3>
+ *
+ * <p> The producer sees {@link #writableBytes()}.  The
+ * <code>`offer'</code> methods write as much as fits, and return
+ * without waiting.  The <code>`write'</code> methods wait for space
+ * from the consumer.  Likewise the <code>`read'</code> methods return
+ * what is available, and the <code>`take'</code> methods wait for
+ * content.  The producer calls {@link #close()} at the end of its
+ * input, after which the consumer drains the ring and sees end of
+ * stream. </p>
+ *
+ * <p> Not employed by the android open and save tasks, which hand
+ * chunks from thread to thread with {@link Spsc}.  It is available
+ * for a producer and consumer over a byte stream. </p>
+ *
+ * <h3>MT Safe</h3>
+ *
+ * <p> Unlike {@link Bbuf}, methods are synchronized on the instance,
+ * which is the monitor for waiting producers and consumers. </p>
+ */
+public class Rbuf
+    extends Bits
+{
+
+    private final byte[] buf;
+
+    private final int mask;
+
+    /**
+     * Read and write counters, with content from <code>`rc'</code>
+     * (inclusive) to <code>`wc'</code> (exclusive)
+     */
+    private long rc = 0L, wc = 0L;
+
+    private boolean closed = false;
+
+
+    /**
+     * @param capacity Fixed capacity, rounded up to a power of two
+     */
+    public Rbuf( int capacity){
+        super();
+        if ( 0 < capacity && capacity <= 0x40000000){
+            int size = (1 < capacity)?(Integer.highestOneBit(capacity-1)<<1):(1);
+            this.buf = new byte[size];
+            this.mask = (size-1);
+        }
+        else
+            throw new IllegalArgumentException(String.valueOf(capacity));
+    }
+
+
+    public final int capacity(){
+        return this.buf.length;
+    }
+    /**
+     * @return Bytes available for reading
+     */
+    public synchronized int available(){
+
+        return (int)(this.wc - this.rc);
+    }
+    /**
+     * @return Space available for writing without waiting
+     */
+    public synchronized int writableBytes(){
+
+        return (this.buf.length - (int)(this.wc - this.rc));
+    }
+    /**
+     * @return The producer has closed the ring
+     */
+    public synchronized boolean isClosed(){
+        return this.closed;
+    }
+    /**
+     * @return The ring is closed and empty
+     */
+    public synchronized boolean isEnd(){
+        return (this.closed && this.rc == this.wc);
+    }
+    /**
+     * End of input from the producer.  Waiting consumers see end of
+     * stream once the ring is empty, and waiting producers fail.
+     */
+    public synchronized void close(){
+        this.closed = true;
+        this.notifyAll();
+    }
+    /**
+     * Discard the content and reopen the ring.
+     */
+    public synchronized void reset(){
+        this.rc = 0L;
+        this.wc = 0L;
+        this.closed = false;
+        this.notifyAll();
+    }
+    /**
+     * Look at next byte to be read.
+     */
+    public synchronized int peek(){
+        if (this.rc < this.wc)
+            return (this.buf[(int)this.rc & this.mask] & 0xff);
+        else
+            return -1;
+    }
+    /**
+     * @return Next byte, or negative one when none is available
+     */
+    public synchronized int read(){
+        if (this.rc < this.wc){
+            int re = (this.buf[(int)this.rc & this.mask] & 0xff);
+            this.rc += 1L;
+            this.notifyAll();
+            return re;
+        }
+        else
+            return -1;
+    }
+    public int read(byte b[]){
+
+        return this.read(b,0,b.length);
+    }
+    /**
+     * Copy as many as the requested number of bytes, or available
+     * bytes, without waiting.
+     *
+     * @return Number of bytes copied, zero when the ring is empty,
+     * or negative one when the ring is empty and closed
+     */
+    public synchronized int read(byte b[], int off, int len){
+        int av = (int)(this.wc - this.rc);
+        if (0 < av){
+            if (len > av)
+                len = av;
+
+            if (0 < len){
+                int o = ((int)this.rc & this.mask);
+                int a = Math.min(len,(this.buf.length-o));
+
+                System.arraycopy(this.buf,o,b,off,a);
+
+                if (a < len)
+                    System.arraycopy(this.buf,0,b,(off+a),(len-a));
+
+                this.rc += len;
+
+                this.notifyAll();
+
+                return len;
+            }
+            else
+                return 0;
+        }
+        else if (this.closed)
+            return -1;
+        else
+            return 0;
+    }
+    /**
+     * Wait for content, and copy as many as the requested number of
+     * bytes, or available bytes.
+     *
+     * @return Number of bytes copied, or negative one at the end of
+     * stream
+     */
+    public synchronized int take(byte b[], int off, int len)
+        throws java.io.InterruptedIOException
+    {
+        if (0 < len){
+            while (this.rc == this.wc && (!this.closed)){
+
+                this.await();
+            }
+            return this.read(b,off,len);
+        }
+        else
+            return 0;
+    }
+    /**
+     * Wait for content.
+     *
+     * @return Next byte, or negative one at the end of stream
+     */
+    public synchronized int take()
+        throws java.io.InterruptedIOException
+    {
+        while (this.rc == this.wc && (!this.closed)){
+
+            this.await();
+        }
+        return this.read();
+    }
+    /**
+     * Copy as many bytes as fit, without waiting.
+     *
+     * @return Number of bytes copied
+     *
+     * @exception java.io.IOException The ring is closed
+     */
+    public synchronized int offer(byte b[], int off, int len)
+        throws java.io.IOException
+    {
+        if (this.closed)
+            throw new java.io.IOException("Ring is closed.");
+        else {
+            int free = (this.buf.length - (int)(this.wc - this.rc));
+            if (len > free)
+                len = free;
+
+            if (0 < len){
+                int o = ((int)this.wc & this.mask);
+                int a = Math.min(len,(this.buf.length-o));
+
+                System.arraycopy(b,off,this.buf,o,a);
+
+                if (a < len)
+                    System.arraycopy(b,(off+a),this.buf,0,(len-a));
+
+                this.wc += len;
+
+                this.notifyAll();
+
+                return len;
+            }
+            else
+                return 0;
+        }
+    }
+    /**
+     * Copy the byte if it fits, without waiting.
+     *
+     * @return The byte was written
+     */
+    public synchronized boolean offer(int b)
+        throws java.io.IOException
+    {
+        if (this.closed)
+            throw new java.io.IOException("Ring is closed.");
+        else if ((this.wc - this.rc) < this.buf.length){
+
+            this.buf[(int)this.wc & this.mask] = (byte)b;
+
+            this.wc += 1L;
+
+            this.notifyAll();
+
+            return true;
+        }
+        else
+            return false;
+    }
+    /**
+     * @param b Eight bit byte value, waiting for space
+     */
+    public synchronized void write(int b)
+        throws java.io.IOException
+    {
+        while (!this.offer(b)){
+
+            this.await();
+        }
+    }
+    public void write(byte b[])
+        throws java.io.IOException
+    {
+        if (null != b)
+            this.write(b,0,b.length);
+    }
+    /**
+     * Copy all bytes, waiting for space.
+     *
+     * @exception java.io.IOException The ring is closed
+     */
+    public synchronized void write(byte b[], int off, int len)
+        throws java.io.IOException
+    {
+        while (0 < len){
+
+            int many = this.offer(b,off,len);
+
+            if (0 < many){
+                off += many;
+                len -= many;
+            }
+            else
+                this.await();
+        }
+    }
+    /**
+     * Read two bytes into a short.
+     *
+     * @exception java.io.IOException If two bytes are not available.
+     */
+    public synchronized short read2() throws java.io.IOException {
+
+        if ( 2L <= (this.wc - this.rc))
+
+            return (short)this.readn(2);
+        else
+            throw new java.io.IOException("Unable to read two bytes.");
+    }
+    /**
+     * Read four bytes into an int using network byte order (big endian).
+     *
+     * @exception java.io.IOException If four bytes are not available.
+     */
+    public synchronized int read4() throws java.io.IOException {
+
+        if ( 4L <= (this.wc - this.rc))
+
+            return (int)this.readn(4);
+        else
+            throw new java.io.IOException("Unable to read four bytes.");
+    }
+    /**
+     * Read eight bytes into a long using network byte order (big endian).
+     *
+     * @exception java.io.IOException If eight bytes are not available.
+     */
+    public synchronized long read8() throws java.io.IOException {
+
+        if ( 8L <= (this.wc - this.rc))
+
+            return this.readn(8);
+        else
+            throw new java.io.IOException("Unable to read eight bytes.");
+    }
+    /**
+     * Write 16 bits in big endian network byte order, waiting for
+     * space.
+     */
+    public synchronized void write2( int b) throws java.io.IOException {
+
+        this.writen(b,2);
+    }
+    /**
+     * Write 32 bits in big endian network byte order, waiting for
+     * space.
+     */
+    public synchronized void write4( int b) throws java.io.IOException {
+
+        this.writen(b,4);
+    }
+    /**
+     * Write 64 bits in big endian network byte order, waiting for
+     * space.
+     */
+    public synchronized void write8( long b) throws java.io.IOException {
+
+        this.writen(b,8);
+    }
+    /**
+     * Fill the free space from the channel, without waiting on the
+     * ring.
+     *
+     * @param in Source channel, not closed
+     *
+     * @return Number of bytes read, or negative one at the end of the
+     * channel
+     */
+    public synchronized int readFrom(ReadableByteChannel in)
+        throws java.io.IOException
+    {
+        if (this.closed)
+            throw new java.io.IOException("Ring is closed.");
+        else {
+            int free = (this.buf.length - (int)(this.wc - this.rc));
+            if (0 < free){
+                int o = ((int)this.wc & this.mask);
+                int a = Math.min(free,(this.buf.length-o));
+
+                int count = in.read(ByteBuffer.wrap(this.buf,o,a));
+
+                if (a == count && a < free){
+                    int more = in.read(ByteBuffer.wrap(this.buf,0,(free-a)));
+                    if (0 < more)
+                        count += more;
+                }
+
+                if (0 < count){
+                    this.wc += count;
+                    this.notifyAll();
+                }
+                return count;
+            }
+            else
+                return 0;
+        }
+    }
+    /**
+     * Drain the content to the channel, without waiting on the ring.
+     *
+     * @param out Target channel, not closed
+     *
+     * @return Number of bytes written
+     */
+    public synchronized int writeTo(WritableByteChannel out)
+        throws java.io.IOException
+    {
+        int av = (int)(this.wc - this.rc);
+        if (0 < av){
+            int o = ((int)this.rc & this.mask);
+            int a = Math.min(av,(this.buf.length-o));
+
+            int count = out.write(ByteBuffer.wrap(this.buf,o,a));
+
+            if (a == count && a < av)
+                count += out.write(ByteBuffer.wrap(this.buf,0,(av-a)));
+
+            if (0 < count){
+                this.rc += count;
+                this.notifyAll();
+            }
+            return count;
+        }
+        else
+            return 0;
+    }
+
+    private long readn(int n){
+        long re = 0L;
+        for (int cc = 0; cc < n; cc++){
+
+            re = (re<<8)|(this.buf[(int)this.rc & this.mask] & 0xff);
+
+            this.rc += 1L;
+        }
+        this.notifyAll();
+        return re;
+    }
+    private void writen(long b, int n)
+        throws java.io.IOException
+    {
+        if (n > this.buf.length)
+            throw new IllegalStateException("Capacity is less than "+n+" bytes.");
+        else {
+            while (true){
+                if (this.closed)
+                    throw new java.io.IOException("Ring is closed.");
+                else if ((this.buf.length - (this.wc - this.rc)) >= n)
+                    break;
+                else
+                    this.await();
+            }
+            for (int sh = ((n-1)<<3); 0 <= sh; sh -= 8){
+
+                this.buf[(int)this.wc & this.mask] = (byte)(b>>>sh);
+
+                this.wc += 1L;
+            }
+            this.notifyAll();
+        }
+    }
+    private void await()
+        throws java.io.InterruptedIOException
+    {
+        try {
+            this.wait();
+        }
+        catch (InterruptedException exc){
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException();
+        }
+    }
+}
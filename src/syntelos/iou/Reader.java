@@ -33,6 +33,8 @@ public class Reader extends java.io.Reader {
      */
     public final CharBuffer source;
 
+    private Numeric numeric;
+
     /**
      * 
      */
@@ -133,6 +135,54 @@ public class Reader extends java.io.Reader {
 	}
 	return re;
     }
+    /**
+     * Skip the argument character class.
+     * 
+     * @param cc Compiled character class
+     * 
+     * @return Number of characters skipped.
+     */
+    public int skip(CharClass cc){
+	int start = this.source.position();
+	int p = cc.span(this.source,start,this.source.limit());
+	if (start < p){
+	    this.source.position(p);
+	    return (p-start);
+	}
+	else {
+	    return 0;
+	}
+    }
+    /**
+     * Scan the argument character class, without moving the
+     * position.
+     * 
+     * @return Source index (exclusive) of the span from the source
+     * position (inclusive)
+     */
+    public int span(CharClass cc){
+
+	return cc.span(this.source,this.source.position(),this.source.limit());
+    }
+    /**
+     * Skip the argument character class.
+     * 
+     * @return View of the characters skipped, sharing the source
+     * content, or null for none
+     */
+    public CharBuffer slice(CharClass cc){
+	int start = this.source.position();
+	int end = this.span(cc);
+	if (start < end){
+	    CharBuffer re = this.source.duplicate();
+	    re.limit(end);
+	    this.source.position(end);
+	    return re.slice();
+	}
+	else {
+	    return null;
+	}
+    }
     @Override
     public boolean ready() throws IOException {
 
@@ -165,21 +215,38 @@ public class Reader extends java.io.Reader {
 	int start = this.source.position();
 	int count = this.skip(cc);
 	if (0 < count){
-	    int p = start;
-	    StringBuilder string = new StringBuilder();
-	    for (int cx = 0; cx < count; cx++){
-		string.append(this.source.get(p++));
-	    }
-	    return string.toString();
+	    return this.string(start,(start+count));
+	}
+	else {
+	    return null;
+	}
+    }
+    /**
+     * 
+     */
+    public java.lang.String substring(CharClass cc){
+	int start = this.source.position();
+	int count = this.skip(cc);
+	if (0 < count){
+	    return this.string(start,(start+count));
 	}
 	else {
 	    return null;
 	}
     }
     public int integer(long defv){
-	java.lang.String string = substring(INT);
-	if (null != string){
-	    return java.lang.Integer.decode(string);
+	int start = this.source.position();
+	int end = this.span(CharClass.DIGIT);
+	if (start < end){
+	    Numeric num = this.numeric();
+	    int re = num.decodeInt(this.source,start,end);
+	    if (end == num.end()){
+		this.source.position(end);
+		return re;
+	    }
+	    else {
+		throw new NumberFormatException(String.format("Integer not found at offset %d.",start));
+	    }
 	}
 	else if (Integer.MIN_VALUE <= defv && defv <= Integer.MAX_VALUE){
 	    return (int)defv;
@@ -188,7 +255,71 @@ public class Reader extends java.io.Reader {
 	    throw new IllegalStateException(String.format("Integer not found at offset %d.",this.source.position()));
 	}
     }
+    /**
+     * Read a decimal integer with optional sign, without an
+     * intermediate string.
+     * 
+     * @exception java.lang.NumberFormatException Number not found, or
+     * overflow
+     */
+    public int parseInt(){
+	Numeric num = this.numeric();
+	int re = num.parseInt(this.source,this.source.position(),this.source.limit());
+	this.source.position(num.end());
+	return re;
+    }
+    /**
+     * @see #parseInt()
+     */
+    public long parseLong(){
+	Numeric num = this.numeric();
+	long re = num.parseLong(this.source,this.source.position(),this.source.limit());
+	this.source.position(num.end());
+	return re;
+    }
+    /**
+     * Read unsigned hexadecimal digits, without prefix.
+     */
+    public long parseHex(){
+	Numeric num = this.numeric();
+	long re = num.parseHex(this.source,this.source.position(),this.source.limit());
+	this.source.position(num.end());
+	return re;
+    }
+    /**
+     * Read a decimal float with optional sign, fraction and exponent.
+     */
+    public double parseDouble(){
+	Numeric num = this.numeric();
+	double re = num.parseDouble(this.source,this.source.position(),this.source.limit());
+	this.source.position(num.end());
+	return re;
+    }
+    private Numeric numeric(){
+	Numeric num = this.numeric;
+	if (null == num){
+	    num = new Numeric();
+	    this.numeric = num;
+	}
+	return num;
+    }
+    /**
+     * @param start Source index (inclusive)
+     * @param end Source index (exclusive)
+     */
+    private java.lang.String string(int start, int end){
+	CharBuffer source = this.source;
+	if (source.hasArray()){
 
+	    return new java.lang.String(source.array(),(source.arrayOffset()+start),(end-start));
+	}
+	else {
+	    CharBuffer re = source.duplicate();
+	    re.limit(end);
+	    re.position(start);
+	    return re.toString();
+	}
+    }
     public final static boolean in(char c, char[] cc){
 
 	for (char ccc : cc){
@@ -198,9 +329,6 @@ public class Reader extends java.io.Reader {
 	}
 	return false;
     }
-    private final static char[] INT = {
-	'0','1','2','3','4','5','6','7','8','9'
-    };
     public final static CharBuffer open(File file) throws IOException {
 	return Chbuf.read(file);
     }
@@ -0,0 +1,133 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p> Transactional replacement of a file.  The content is written
+ * to a sibling temporary file, which is forced to the device and
+ * renamed over the target.  The directory is then forced to the
+ * device, so that the rename survives a power failure.  A failure
+ * before the rename leaves the target intact, and deletes the
+ * temporary file. </p>
+ *
+ * <p> Forcing a directory is platform specific, as the Java 7 file
+ * API on android has no directory channel: the subclass implements
+ * {@link #sync(java.io.File)}.  Without sync, neither the temporary
+ * file nor the directory is forced, for a faster and less durable
+ * replacement. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ */
+public abstract class Replace
+    extends Object
+{
+
+    public Replace(){
+        super();
+    }
+
+
+    /**
+     * Write the content.
+     */
+    protected abstract void write(FileChannel out)
+        throws IOException;
+    /**
+     * Force the directory to the device, following the rename.
+     */
+    protected abstract void sync(File dir)
+        throws IOException;
+
+    /**
+     * @param target File to replace
+     * @param sync Force the content and the directory to the device
+     *
+     * @return False when the temporary file could not be created or
+     * renamed, for the caller to write the target in place
+     *
+     * @exception java.io.IOException From writing the content, before
+     * the rename, or from forcing the directory, following the
+     * rename
+     */
+    public boolean replace(File target, boolean sync)
+        throws IOException
+    {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (null != dir && dir.canWrite()){
+
+            File temp = Temp(target);
+
+            FileOutputStream os;
+            try {
+                os = new FileOutputStream(temp);
+            }
+            catch (FileNotFoundException exc){
+
+                return false;
+            }
+
+            boolean replaced = false;
+            try {
+                FileChannel fc = os.getChannel();
+
+                this.write(fc);
+
+                if (sync)
+                    fc.force(true);
+
+                os.close();
+
+                replaced = temp.renameTo(target);
+            }
+            finally {
+                if (!replaced){
+                    try {
+                        os.close();
+                    }
+                    catch (IOException ignore){
+                    }
+                    temp.delete();
+                }
+            }
+
+            if (replaced && sync)
+                this.sync(dir);
+
+            return replaced;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * @return Sibling temporary file of the target
+     */
+    public static File Temp(File target){
+        File dir = target.getAbsoluteFile().getParentFile();
+
+        return new File(dir,("."+target.getName()+".tmp"));
+    }
+}
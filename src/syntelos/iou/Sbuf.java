@@ -0,0 +1,1008 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p> Segmented read/ write byte buffer with the API of {@link Bbuf}.
+ * </p>
+ *
+ * <p> The content is held in a list of fixed size slabs, with a power
+ * of two size.  Growth allocates another slab, and never copies the
+ * content, so that buffering a large payload is linear in time and
+ * needs no contiguous array.  Positions are long. </p>
+ *
+ * <p> Channel I/O is gathering and scattering over the slabs, as in
+ * {@link #writeTo(java.nio.channels.WritableByteChannel)} and {@link
+ * #readFrom(java.nio.channels.ScatteringByteChannel,long)}. </p>
+ *
+ * <p> Reading, writing, marks and unread follow {@link Bbuf}.
+ * Slabs behind the read position are retained for unread and
+ * <code>`reset_read()'</code>, until {@link #compact()} or {@link
+ * #close()}. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> As with {@link Bbuf}, use the instance as a synchronization
+ * monitor when shared among threads. </p>
+ *
+ * @see Bbuf
+ */
+public class Sbuf
+    extends Bits
+{
+
+    public final static int SLAB = 0x10000;//(64K)
+
+    private final static ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+
+    private final int size, shift, mask;
+
+    private ByteBuffer[] slabs = new ByteBuffer[0x10];
+
+    /**
+     * Number of allocated slabs
+     */
+    private int count = 0;
+
+    /**
+     * buffer read position
+     */
+    private long rc = 0L, rc_mark = 0L;
+
+    /**
+     * buffer write position (avail == wc - rc)
+     */
+    private long wc = 0L, wc_mark = 0L;
+
+    /**
+     * The read and write marks have been set, and not reset, so that
+     * an unset mark does not retain slabs in {@link #compact()}
+     */
+    private boolean rc_marked, wc_marked;
+
+    /**
+     * As in {@link Bbuf}.
+     */
+    protected boolean unwind_finished = true;
+
+
+    /**
+     * Output/ write constructor.
+     */
+    public Sbuf(){
+        this(SLAB);
+    }
+    /**
+     * @param slab Slab size, rounded up to a power of two
+     */
+    public Sbuf( int slab){
+        super();
+        if ( 0 < slab && slab <= 0x40000000){
+            int size = (1 < slab)?(Integer.highestOneBit(slab-1)<<1):(1);
+            this.size = size;
+            this.shift = Integer.numberOfTrailingZeros(size);
+            this.mask = (size-1);
+        }
+        else
+            throw new IllegalArgumentException(String.valueOf(slab));
+    }
+    /**
+     * Read file into buffer.
+     */
+    public Sbuf( java.io.File fin) throws java.io.IOException {
+        this(SLAB);
+        this.readFrom(fin);
+    }
+    /**
+     * Copy input into buffer until EOF
+     */
+    public Sbuf( java.io.InputStream in) throws java.io.IOException {
+        this(SLAB);
+        if ( null == in)
+            throw new IllegalArgumentException("Null input stream for `Sbuf'.");
+        else
+            this.readFrom(in);
+    }
+
+
+    /**
+     * @return Slab size
+     */
+    public final int slab(){
+        return this.size;
+    }
+    /**
+     * @return Number of allocated slabs
+     */
+    public final int slabs(){
+        return this.count;
+    }
+    /**
+     * @return Bytes available for reading.
+     */
+    public long available(){
+
+        return (this.wc - this.rc);
+    }
+    public final long length(){
+
+        return (this.wc - this.rc);
+    }
+    /**
+     * @return Offset of the last byte written, or negative one before
+     * the first byte has been written
+     */
+    public long offset_write(){
+        return (this.wc-1L);
+    }
+    /**
+     * @return Offset of the last byte read, or negative one before
+     * the first byte has been read
+     */
+    public long offset_read(){
+        return (this.rc-1L);
+    }
+
+    public void unread(){
+        long rc = this.rc;
+        if (this.unwind_finished){
+            if (0L < rc)
+                this.rc -= 1L;
+        }
+        else {
+            if (0L < rc && this.wc > rc)
+                this.rc -= 1L;
+        }
+    }
+    public void unread(int ch){
+        long rc = this.rc;
+        if (0L < rc && (this.unwind_finished || this.wc > rc))
+
+            this.put((--this.rc),ch);
+        else
+            throw new IllegalStateException("Each 'unread' must follow a 'read'.");
+    }
+    public void unreadn( int n){
+        long rc = this.rc;
+        if (this.unwind_finished){
+
+            if (0 < n && n <= rc)
+                this.rc -= n;
+        }
+        else {
+            if (0 < n && n <= rc && this.wc > rc)
+                this.rc -= n;
+        }
+    }
+    /**
+     * Look at next byte to be read.
+     */
+    public int peek(){
+
+        if ( this.rc < this.wc)
+            return this.get(this.rc);
+        else
+            return -1;
+    }
+    public int read(){
+
+        if ( this.rc < this.wc)
+            return this.get(this.rc++);
+        else
+            return -1;
+    }
+    public int read(byte b[]){
+
+        return this.read(b,0,b.length);
+    }
+    /**
+     * Copy into buffer as many as buffer- length bytes, or available
+     * bytes.
+     *
+     * @returns Number of copied bytes, or negative one when no bytes
+     * are available.
+     */
+    public int read(byte b[], int off, int len){
+        long av = this.available();
+        if (1L > av)
+            return -1;
+        else if (1 > len)
+            return 0;
+        else {
+            if ( len > av)
+                len = (int)av;
+
+            this.copy(this.rc,b,off,len);
+
+            this.rc += len;
+
+            return len;
+        }
+    }
+    /**
+     * Read two bytes into a short.
+     *
+     * @exception java.io.IOException If two bytes are not available.
+     */
+    public short read2() throws java.io.IOException {
+
+        if ( 2L <= this.available()){
+
+            int ch = (this.get(this.rc++)<<8);
+
+            ch |= this.get(this.rc++);
+
+            return (short)ch;
+        }
+        else
+            throw new java.io.IOException("Unable to read two bytes.");
+    }
+    /**
+     * Read three bytes into an int using network byte order (big endian).
+     *
+     * @exception java.io.IOException If three bytes are not available.
+     */
+    public int read3() throws java.io.IOException {
+
+        if ( 3L <= this.available()){
+
+            int ch = (this.get(this.rc++)<<16);
+
+            ch |= (this.get(this.rc++)<<8);
+
+            ch |= this.get(this.rc++);
+
+            return ch;
+        }
+        else
+            throw new java.io.IOException("Unable to read three bytes.");
+    }
+    /**
+     * Read four bytes into an int using network byte order (big endian).
+     *
+     * @exception java.io.IOException If four bytes are not available.
+     */
+    public int read4() throws java.io.IOException {
+
+        if ( 4L <= this.available()){
+
+            int ch = (this.get(this.rc++)<<24);
+
+            ch |= (this.get(this.rc++)<<16);
+
+            ch |= (this.get(this.rc++)<<8);
+
+            ch |= this.get(this.rc++);
+
+            return ch;
+        }
+        else
+            throw new java.io.IOException("Unable to read four bytes.");
+    }
+    /**
+     * Read eight bytes into a long using network byte order (big endian).
+     *
+     * @exception java.io.IOException If eight bytes are not available.
+     */
+    public long read8() throws java.io.IOException {
+
+        if ( 8L <= this.available()){
+
+            long hi = (this.read4() & 0xffffffffL);
+
+            long lo = (this.read4() & 0xffffffffL);
+
+            return ((hi<<32)|lo);
+        }
+        else
+            throw new java.io.IOException("Unable to read eight bytes.");
+    }
+    /**
+     * Skip read bytes, or available bytes.
+     *
+     * @returns Number of bytes skipped.
+     */
+    public long skip_read(long n){
+        long av = this.available();
+        if (n > av)
+            n = av;
+
+        if (0L < n){
+
+            this.rc += n;
+
+            return n;
+        }
+        else
+            return 0L;
+    }
+    /**
+     * Reset reading back to first byte of the current buffer, or to
+     * the last marked position.  Also reset the reading mark to zero
+     * so that two (or more) calls to reset clears any mark.
+     */
+    public void reset_read(){
+        this.rc = this.rc_mark;
+        this.rc_mark = 0L;
+        this.rc_marked = false;
+    }
+    /**
+     * Sets "reset read" (reading) mark to current position.
+     */
+    public void mark_read(){
+        this.rc_mark = this.rc;
+        this.rc_marked = true;
+    }
+    /**
+     * Return bytes read or skipped since last "mark".
+     */
+    public byte[] marked_read(){
+
+        return this.marked_read(0);
+    }
+    /**
+     * Return bytes read or skipped since last "mark".  If drop is
+     * greater than zero, exclude last drop bytes from returned array
+     * with no internal effect on read or mark pointers.
+     */
+    public byte[] marked_read(int drop){
+        if (0 > drop)
+            throw new java.lang.IllegalArgumentException(String.valueOf(drop));
+        else {
+            long many = (this.rc-this.rc_mark-drop);
+            if ( 0L < many)
+                return this.copy(this.rc_mark,many);
+            else
+                return null;
+        }
+    }
+    public final String readLine(){
+        int ch, drop = 0;
+        this.mark_read();
+        readl:
+        while (true) {
+            switch (ch = this.read()) {
+            case -1:
+            case '\n':
+                drop += 1;
+                break readl;
+            case '\r':
+                drop += 1;
+                switch (ch = this.read()){
+                case -1:
+                    break readl;
+                case '\n':
+                    drop += 1;
+                    break readl;
+                default:
+                    this.unread();
+                    break readl;
+                }
+            default:
+                break;
+            }
+        }
+        byte[] buf = this.marked_read(drop);
+        if (null == buf)
+            return null;
+        else {
+            char[] cary = Utf8.decode(buf);
+            return new java.lang.String(cary);
+        }
+    }
+    /**
+     * Reset writing back to first byte of the current buffer, or to
+     * the last marked position.  Also reset the writing mark to zero
+     * so that two (or more) calls to reset clears any mark.
+     */
+    public void reset(){
+        this.wc = this.wc_mark;
+        this.wc_mark = 0L;
+        this.wc_marked = false;
+    }
+    /**
+     * Same as "reset".
+     */
+    public void reset_write(){
+        this.reset();
+    }
+    /**
+     * Reset reading and writing.
+     */
+    public void resetall(){
+        this.reset();
+        this.reset_read();
+    }
+    /**
+     * Sets "reset" (writing) mark to current position.
+     */
+    public void mark_write(){
+        this.wc_mark = this.wc;
+        this.wc_marked = true;
+    }
+    /**
+     * Return bytes written since last "mark".
+     */
+    public byte[] marked_write(){
+
+        long many = (this.wc-this.wc_mark);
+
+        if ( 0L < many)
+            return this.copy(this.wc_mark,many);
+        else
+            return null;
+    }
+    /**
+     * Look at last byte written.
+     */
+    public int peek_write(){
+        if (0L < this.wc)
+            return this.get(this.wc-1L);
+        else
+            return -1;
+    }
+    /**
+     * @param b Eight bit byte value */
+    public void write(int b){
+
+        this.ensure(this.wc+1L);
+
+        this.put(this.wc++,b);
+    }
+    public void write(byte b[]){
+        if ( null != b)
+            this.write(b,0,b.length);
+    }
+    /**
+     * @param b Non null input buffer to copy into the internal buffer.
+     *
+     * @param off Offset in input buffer `b' from which to copy
+     *
+     * @param len Number of bytes to copy from input buffer `b'.
+     */
+    public void write(byte b[], int off, int len){
+        if (0 < len){
+            long wc = this.wc;
+
+            this.ensure(wc+len);
+
+            final int size = this.size;
+
+            while (0 < len){
+                ByteBuffer slab = this.slabs[(int)(wc>>>this.shift)];
+                int o = ((int)wc & this.mask);
+                int many = Math.min(len,(size-o));
+
+                slab.limit(size);
+                slab.position(o);
+                slab.put(b,off,many);
+
+                wc += many;
+                off += many;
+                len -= many;
+            }
+            this.wc = wc;
+        }
+    }
+    /**
+     * Copy the remaining content of the argument into the buffer.
+     */
+    public void write(ByteBuffer b){
+        int len = b.remaining();
+        if (0 < len){
+            long wc = this.wc;
+
+            this.ensure(wc+len);
+
+            final int size = this.size;
+            final int lim = b.limit();
+
+            while (0 < len){
+                ByteBuffer slab = this.slabs[(int)(wc>>>this.shift)];
+                int o = ((int)wc & this.mask);
+                int many = Math.min(len,(size-o));
+
+                slab.limit(size);
+                slab.position(o);
+                b.limit(b.position()+many);
+                slab.put(b);
+
+                wc += many;
+                len -= many;
+            }
+            b.limit(lim);
+            this.wc = wc;
+        }
+    }
+    /**
+     * Write 16 bits in big endian network byte order.
+     * @param b 16 bits */
+    public void write2 ( int b){
+
+        this.ensure(this.wc+2L);
+
+        this.put(this.wc++,(b>>>8));
+        this.put(this.wc++,b);
+    }
+    /**
+     * Write 24 bits in big endian network byte order.
+     * @param b 24 bits */
+    public void write3 ( int b){
+
+        this.ensure(this.wc+3L);
+
+        this.put(this.wc++,(b>>>16));
+        this.put(this.wc++,(b>>>8));
+        this.put(this.wc++,b);
+    }
+    /**
+     * Write 32 bits in big endian network byte order.
+     * @param b 32 bits */
+    public void write4 ( int b){
+
+        this.ensure(this.wc+4L);
+
+        this.put(this.wc++,(b>>>24));
+        this.put(this.wc++,(b>>>16));
+        this.put(this.wc++,(b>>>8));
+        this.put(this.wc++,b);
+    }
+    /**
+     * Write 64 bits in big endian network byte order.
+     * @param b 64 bits */
+    public void write8 ( long b){
+
+        this.write4((int)(b>>>32));
+        this.write4((int)b);
+    }
+    /**
+     * Positions the read and write pointers (and write mark) to the
+     * beginning of the buffer
+     */
+    public void flush(){
+
+        this.wc = 0L;
+        this.rc = 0L;
+
+        this.wc_mark = 0L;
+        this.wc_marked = false;
+    }
+    /**
+     * Resets both pointers and markers.  The slabs are retained for
+     * reuse.
+     */
+    public void close(){
+
+        this.wc = 0L;
+        this.rc = 0L;
+
+        this.rc_mark = 0L;
+        this.wc_mark = 0L;
+
+        this.rc_marked = false;
+        this.wc_marked = false;
+    }
+    /**
+     * Recycle the slabs behind the read position, and behind each
+     * mark that is set.  Positions are rebased to the first retained
+     * slab, so that unread and <code>`reset_read()'</code> can not go
+     * further back than its start.
+     */
+    public void compact(){
+        long keep = this.rc;
+        if (this.rc_marked)
+            keep = Math.min(keep,this.rc_mark);
+        if (this.wc_marked)
+            keep = Math.min(keep,this.wc_mark);
+
+        int drop = (int)(keep>>>this.shift);
+
+        if (0 < drop){
+            int count = this.count;
+            ByteBuffer[] slabs = this.slabs;
+            ByteBuffer[] dropped = new ByteBuffer[drop];
+
+            System.arraycopy(slabs,0,dropped,0,drop);
+            System.arraycopy(slabs,drop,slabs,0,(count-drop));
+            System.arraycopy(dropped,0,slabs,(count-drop),drop);
+
+            long base = ((long)drop<<this.shift);
+
+            this.rc -= base;
+            this.wc -= base;
+
+            this.rc_mark = (this.rc_marked)?(this.rc_mark-base):(0L);
+            this.wc_mark = (this.wc_marked)?(this.wc_mark-base):(0L);
+        }
+    }
+    /**
+     * Release the slabs.  Any calls on this object will produce null
+     * pointer exceptions after this method has been called.
+     */
+    public void destroy(){
+        ByteBuffer[] slabs = this.slabs;
+        if (null != slabs){
+            for (int cc = 0, count = this.count; cc < count; cc++){
+
+                this.free(slabs[cc]);
+            }
+            this.slabs = null;
+            this.count = 0;
+        }
+    }
+    /**
+     * @return Views of the readable (available) bytes, without
+     * copying.  Has no effect on the state of reading or writing.
+     */
+    public ByteBuffer[] buffers(){
+
+        return this.views(this.rc,this.wc);
+    }
+    /**
+     * Copy readable (available) bytes from buffer.  If there are no
+     * available bytes, return null.  The same bytes remain readable
+     * (available).  Has no effect on the state of reading or writing.
+     */
+    public final byte[] toByteArray(){
+
+        long av = this.available();
+
+        if ( 0L >= av)
+            return null;
+        else
+            return this.copy(this.rc,av);
+    }
+    /**
+     * Pass the available bits through UTF-8
+     */
+    public String toString(){
+
+        byte[] bits = this.toByteArray();
+
+        if ( null == bits)
+            return null;
+        else {
+            char[] str = Utf8.decode(bits);
+
+            if ( null == str)
+                return null;
+            else
+                return new String(str);
+        }
+    }
+    /**
+     * Read the stream contents into memory, directly into the slabs
+     * of heap buffers.
+     *
+     * @param in Source stream.
+     */
+    public Sbuf readFrom(java.io.InputStream in) throws java.io.IOException {
+        byte[] iob = null;
+        while (true){
+            this.ensure(this.wc+1L);
+
+            ByteBuffer slab = this.slabs[(int)(this.wc>>>this.shift)];
+            int o = ((int)this.wc & this.mask);
+            int many = (this.size-o);
+            int read;
+
+            if (slab.hasArray())
+
+                read = in.read(slab.array(),(slab.arrayOffset()+o),many);
+            else {
+                if (null == iob)
+                    iob = new byte[Math.min(this.size,Bbuf.COPY)];
+
+                read = in.read(iob,0,Math.min(many,iob.length));
+                if (0 < read){
+                    slab.limit(this.size);
+                    slab.position(o);
+                    slab.put(iob,0,read);
+                }
+            }
+
+            if (0 < read)
+                this.wc += read;
+            else
+                return this;
+        }
+    }
+    /**
+     * Read the channel contents into memory until end of stream.
+     */
+    public Sbuf readFrom(ReadableByteChannel in) throws java.io.IOException {
+        while (true){
+            this.ensure(this.wc+1L);
+
+            ByteBuffer[] tail = this.views(this.wc,(((this.wc>>>this.shift)+1L)<<this.shift));
+
+            int read = in.read(tail[0]);
+            if (0 < read)
+                this.wc += read;
+            else
+                return this;
+        }
+    }
+    /**
+     * Scattering read into the slabs, until the requested number of
+     * bytes have been read, or end of stream.
+     *
+     * @param many Number of bytes to read
+     *
+     * @return Number of bytes read
+     */
+    public long readFrom(ScatteringByteChannel in, long many) throws java.io.IOException {
+        if (0L < many){
+            long start = this.wc, end = (start+many);
+
+            this.ensure(end);
+
+            ByteBuffer[] dst = this.views(start,end);
+
+            long total = 0L, read;
+            int first = 0;
+
+            while (total < many){
+
+                read = in.read(dst,first,(dst.length-first));
+
+                if (0L < read){
+                    total += read;
+
+                    while (first < dst.length && (!dst[first].hasRemaining()))
+                        first += 1;
+                }
+                else
+                    break;
+            }
+            this.wc += total;
+            return total;
+        }
+        else
+            return 0L;
+    }
+    /**
+     * Read file contents into this buffer.
+     *
+     * @param fi Source file.  If the file exists, it is read.
+     */
+    public Sbuf readFrom( java.io.File fi) throws java.io.IOException {
+        if (fi.exists()){
+
+            java.io.FileInputStream in = new java.io.FileInputStream(fi);
+            try {
+                java.nio.channels.FileChannel fc = in.getChannel();
+
+                this.readFrom(fc,fc.size());
+            }
+            finally {
+                in.close();
+            }
+        }
+        return this;
+    }
+    /**
+     * Write the buffer contents to the stream, consuming them.
+     *
+     * @param out Destination stream.
+     *
+     * @return Number of bytes written
+     */
+    public long writeTo(java.io.OutputStream out) throws java.io.IOException {
+        long total = 0L;
+        byte[] iob = null;
+
+        for (ByteBuffer src : this.buffers()){
+
+            int many = src.remaining();
+
+            if (src.hasArray())
+
+                out.write(src.array(),(src.arrayOffset()+src.position()),many);
+            else {
+                if (null == iob)
+                    iob = new byte[Math.min(this.size,Bbuf.COPY)];
+
+                while (src.hasRemaining()){
+                    int count = Math.min(iob.length,src.remaining());
+                    src.get(iob,0,count);
+                    out.write(iob,0,count);
+                }
+            }
+            total += many;
+            this.rc += many;
+        }
+        return total;
+    }
+    /**
+     * Write the buffer contents to the channel, consuming them.  A
+     * gathering channel is written with one call per iteration over
+     * the remaining slabs.  A non blocking channel may consume less
+     * than the available bytes.
+     *
+     * @return Number of bytes written
+     */
+    public long writeTo(WritableByteChannel out) throws java.io.IOException {
+
+        ByteBuffer[] src = this.buffers();
+
+        long total = 0L, wrote;
+
+        if (out instanceof GatheringByteChannel){
+
+            GatheringByteChannel gather = (GatheringByteChannel)out;
+
+            int first = 0;
+
+            while (first < src.length){
+
+                wrote = gather.write(src,first,(src.length-first));
+
+                if (0L < wrote){
+                    total += wrote;
+
+                    while (first < src.length && (!src[first].hasRemaining()))
+                        first += 1;
+                }
+                else
+                    break;
+            }
+        }
+        else {
+            write:
+            for (ByteBuffer b : src){
+
+                while (b.hasRemaining()){
+
+                    wrote = out.write(b);
+
+                    if (0L < wrote)
+                        total += wrote;
+                    else
+                        break write;
+                }
+            }
+        }
+        this.rc += total;
+        return total;
+    }
+    /**
+     * Write buffer to file, consuming it.
+     */
+    public void writeTo( java.io.File fi) throws java.io.IOException {
+
+        java.io.FileOutputStream out = new java.io.FileOutputStream(fi);
+        try {
+            this.writeTo(out.getChannel());
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Allocate a slab.  Subclasses may allocate direct buffers.
+     *
+     * @param size Slab size
+     */
+    protected ByteBuffer slab(int size){
+
+        return ByteBuffer.allocate(size);
+    }
+    /**
+     * Release a slab from {@link #destroy()}.  Subclasses may free
+     * direct buffers.
+     */
+    protected void free(ByteBuffer slab){
+    }
+    /**
+     * Allocate slabs to accomodate the position.
+     */
+    private void ensure(long end){
+        long capacity = ((long)this.count<<this.shift);
+        if (end > capacity){
+
+            int need = (int)(((end-1L)>>>this.shift)+1L);
+
+            if (need > this.slabs.length){
+
+                ByteBuffer[] copier = new ByteBuffer[Math.max(need,(this.slabs.length<<1))];
+                System.arraycopy(this.slabs,0,copier,0,this.count);
+                this.slabs = copier;
+            }
+
+            for (int cc = this.count; cc < need; cc++){
+
+                this.slabs[cc] = this.slab(this.size);
+            }
+            this.count = need;
+        }
+    }
+    private int get(long p){
+
+        return (this.slabs[(int)(p>>>this.shift)].get((int)p & this.mask) & 0xff);
+    }
+    private void put(long p, int b){
+
+        this.slabs[(int)(p>>>this.shift)].put(((int)p & this.mask),(byte)b);
+    }
+    private void copy(long p, byte[] dst, int off, int len){
+
+        final int size = this.size;
+
+        while (0 < len){
+            ByteBuffer slab = this.slabs[(int)(p>>>this.shift)];
+            int o = ((int)p & this.mask);
+            int many = Math.min(len,(size-o));
+
+            slab.limit(size);
+            slab.position(o);
+            slab.get(dst,off,many);
+
+            p += many;
+            off += many;
+            len -= many;
+        }
+    }
+    private byte[] copy(long p, long many){
+        if (many > Integer.MAX_VALUE)
+            throw new IllegalStateException("Content is too large for a single array.");
+        else {
+            byte[] re = new byte[(int)many];
+            this.copy(p,re,0,(int)many);
+            return re;
+        }
+    }
+    /**
+     * @return Views of the slabs from start (inclusive) to end
+     * (exclusive), which must be allocated
+     */
+    private ByteBuffer[] views(long start, long end){
+        if (start < end){
+            int first = (int)(start>>>this.shift);
+            int last = (int)((end-1L)>>>this.shift);
+
+            ByteBuffer[] re = new ByteBuffer[last-first+1];
+
+            for (int cc = first; cc <= last; cc++){
+
+                ByteBuffer view = this.slabs[cc].duplicate();
+
+                int lo = (cc == first)?((int)start & this.mask):(0);
+                int hi = (cc == last)?(((int)(end-1L) & this.mask)+1):(this.size);
+
+                view.limit(hi);
+                view.position(lo);
+
+                re[cc-first] = view;
+            }
+            return re;
+        }
+        else
+            return EMPTY;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Lock free single producer, single consumer ring, for the hand
+ * off from a background thread to the UI thread. </p>
+ *
+ * <p> The producer owns the tail counter, and the consumer owns the
+ * head counter.  Each publishes its counter with an ordered write
+ * (<code>`AtomicLong.lazySet'</code>, a release store), and reads the
+ * other with a volatile read (an acquire load) only when its cached
+ * copy shows too little space or content.  A batch of bytes or
+ * characters is copied and then published with one store.  There is
+ * no monitor and no waiting: the consumer polls, for example from a
+ * UI thread handler. </p>
+ *
+ * <h3>Thread Safety</h3>
+ *
+ * <p> Exactly one thread may call the producer methods
+ * (<code>`offer'</code>, <code>`writable'</code> and
+ * <code>`close'</code>), and exactly one thread may call the consumer
+ * methods (<code>`poll'</code>, <code>`read'</code>,
+ * <code>`drainTo'</code>, <code>`available'</code> and
+ * <code>`isEnd'</code>). </p>
+ *
+ * @see Spsc.Bytes
+ * @see Spsc.Chars
+ */
+public abstract class Spsc
+    extends Object
+{
+
+    protected final int capacity, mask;
+
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+    /**
+     * Producer tail, and producer copy of head
+     */
+    private long p_tail, p_head;
+
+    /**
+     * Consumer head, and consumer copy of tail
+     */
+    private long c_head, c_tail;
+
+    private volatile boolean closed = false;
+
+
+    /**
+     * @param capacity Fixed capacity, rounded up to a power of two
+     */
+    protected Spsc(int capacity){
+        super();
+        if ( 0 < capacity && capacity <= 0x40000000){
+            int size = (1 < capacity)?(Integer.highestOneBit(capacity-1)<<1):(1);
+            this.capacity = size;
+            this.mask = (size-1);
+        }
+        else
+            throw new IllegalArgumentException(String.valueOf(capacity));
+    }
+
+
+    public final int capacity(){
+        return this.capacity;
+    }
+    /**
+     * Producer end of input, following its last offer.
+     */
+    public final void close(){
+        this.closed = true;
+    }
+    /**
+     * Producer free space.
+     *
+     * @param want Refresh the cached head when less space is known
+     */
+    public final int writable(int want){
+        int free = (this.capacity - (int)(this.p_tail - this.p_head));
+        if (free < want){
+            this.p_head = this.head.get();
+            free = (this.capacity - (int)(this.p_tail - this.p_head));
+        }
+        return free;
+    }
+    /**
+     * Consumer content.
+     */
+    public final int available(){
+        int avail = (int)(this.c_tail - this.c_head);
+        if (0 == avail){
+            this.c_tail = this.tail.get();
+            avail = (int)(this.c_tail - this.c_head);
+        }
+        return avail;
+    }
+    /**
+     * Consumer end of stream: the producer has closed and the ring
+     * is empty.
+     */
+    public final boolean isEnd(){
+        /*
+         * Read closed before tail, so that the final publication is
+         * visible
+         */
+        if (this.closed){
+
+            this.c_tail = this.tail.get();
+
+            return (this.c_tail == this.c_head);
+        }
+        else
+            return false;
+    }
+
+    /**
+     * @return Producer array offset
+     */
+    protected final int tail(){
+        return ((int)this.p_tail & this.mask);
+    }
+    /**
+     * Producer release store.
+     */
+    protected final void publish(int many){
+        this.p_tail += many;
+        this.tail.lazySet(this.p_tail);
+    }
+    /**
+     * @return Consumer array offset
+     */
+    protected final int head(){
+        return ((int)this.c_head & this.mask);
+    }
+    /**
+     * Consumer release store.
+     */
+    protected final void consume(int many){
+        this.c_head += many;
+        this.head.lazySet(this.c_head);
+    }
+
+
+    /**
+     * Byte ring.
+     */
+    public static class Bytes
+        extends Spsc
+    {
+        private final byte[] buf;
+
+
+        public Bytes(int capacity){
+            super(capacity);
+            this.buf = new byte[this.capacity];
+        }
+
+
+        /**
+         * Producer copies as many bytes as fit, and publishes them.
+         *
+         * @return Number of bytes copied
+         */
+        public int offer(byte[] src, int off, int len){
+            int many = Math.min(len,this.writable(len));
+            if (0 < many){
+                int o = this.tail();
+                int a = Math.min(many,(this.capacity-o));
+
+                System.arraycopy(src,off,this.buf,o,a);
+
+                if (a < many)
+                    System.arraycopy(src,(off+a),this.buf,0,(many-a));
+
+                this.publish(many);
+            }
+            return many;
+        }
+        /**
+         * @return The byte was published
+         */
+        public boolean offer(int b){
+            if (0 < this.writable(1)){
+
+                this.buf[this.tail()] = (byte)b;
+
+                this.publish(1);
+
+                return true;
+            }
+            else
+                return false;
+        }
+        /**
+         * Consumer copies as many bytes as available.
+         *
+         * @return Number of bytes copied, or negative one at the end
+         * of stream
+         */
+        public int poll(byte[] dst, int off, int len){
+            int many = Math.min(len,this.available());
+            if (0 < many){
+                int o = this.head();
+                int a = Math.min(many,(this.capacity-o));
+
+                System.arraycopy(this.buf,o,dst,off,a);
+
+                if (a < many)
+                    System.arraycopy(this.buf,0,dst,(off+a),(many-a));
+
+                this.consume(many);
+
+                return many;
+            }
+            else if (0 < len && this.isEnd())
+                return -1;
+            else
+                return 0;
+        }
+        /**
+         * @return Next byte, or negative one when none is available
+         */
+        public int read(){
+            if (0 < this.available()){
+
+                int re = (this.buf[this.head()] & 0xff);
+
+                this.consume(1);
+
+                return re;
+            }
+            else
+                return -1;
+        }
+        /**
+         * Consumer writes as many bytes as available.
+         *
+         * @return Number of bytes written
+         */
+        public int drainTo(java.nio.channels.WritableByteChannel out)
+            throws java.io.IOException
+        {
+            int many = this.available();
+            if (0 < many){
+                int o = this.head();
+                int a = Math.min(many,(this.capacity-o));
+
+                int count = out.write(java.nio.ByteBuffer.wrap(this.buf,o,a));
+
+                if (a == count && a < many)
+                    count += out.write(java.nio.ByteBuffer.wrap(this.buf,0,(many-a)));
+
+                if (0 < count)
+                    this.consume(count);
+
+                return count;
+            }
+            else
+                return 0;
+        }
+    }
+    /**
+     * Character ring.
+     */
+    public static class Chars
+        extends Spsc
+    {
+        private final char[] buf;
+
+
+        public Chars(int capacity){
+            super(capacity);
+            this.buf = new char[this.capacity];
+        }
+
+
+        /**
+         * Producer copies as many characters as fit, and publishes
+         * them.
+         *
+         * @return Number of characters copied
+         */
+        public int offer(char[] src, int off, int len){
+            int many = Math.min(len,this.writable(len));
+            if (0 < many){
+                int o = this.tail();
+                int a = Math.min(many,(this.capacity-o));
+
+                System.arraycopy(src,off,this.buf,o,a);
+
+                if (a < many)
+                    System.arraycopy(src,(off+a),this.buf,0,(many-a));
+
+                this.publish(many);
+            }
+            return many;
+        }
+        /**
+         * Producer copies as many characters from
+         * <code>`start'</code> (inclusive) to <code>`end'</code>
+         * (exclusive) as fit, and publishes them.
+         *
+         * @return Number of characters copied
+         */
+        public int offer(CharSequence src, int start, int end){
+            int len = (end-start);
+            int many = Math.min(len,this.writable(len));
+            if (0 < many){
+                int o = this.tail();
+                int a = Math.min(many,(this.capacity-o));
+
+                Copy(src,start,(start+a),this.buf,o);
+
+                if (a < many)
+                    Copy(src,(start+a),(start+many),this.buf,0);
+
+                this.publish(many);
+            }
+            return many;
+        }
+        /**
+         * Consumer copies as many characters as available.
+         *
+         * @return Number of characters copied, or negative one at the
+         * end of stream
+         */
+        public int poll(char[] dst, int off, int len){
+            int many = Math.min(len,this.available());
+            if (0 < many){
+                int o = this.head();
+                int a = Math.min(many,(this.capacity-o));
+
+                System.arraycopy(this.buf,o,dst,off,a);
+
+                if (a < many)
+                    System.arraycopy(this.buf,0,dst,(off+a),(many-a));
+
+                this.consume(many);
+
+                return many;
+            }
+            else if (0 < len && this.isEnd())
+                return -1;
+            else
+                return 0;
+        }
+        /**
+         * @return Next character, or negative one when none is
+         * available
+         */
+        public int read(){
+            if (0 < this.available()){
+
+                char re = this.buf[this.head()];
+
+                this.consume(1);
+
+                return re;
+            }
+            else
+                return -1;
+        }
+        /**
+         * Consumer appends as many as the requested number of
+         * characters, or available characters, in one or two appends.
+         *
+         * @return Number of characters appended
+         */
+        public int drainTo(Appendable out, int max)
+            throws java.io.IOException
+        {
+            int many = Math.min(max,this.available());
+            if (0 < many){
+                int o = this.head();
+                int a = Math.min(many,(this.capacity-o));
+
+                out.append(java.nio.CharBuffer.wrap(this.buf,o,a));
+
+                if (a < many)
+                    out.append(java.nio.CharBuffer.wrap(this.buf,0,(many-a)));
+
+                this.consume(many);
+
+                return many;
+            }
+            else
+                return 0;
+        }
+
+        private static void Copy(CharSequence src, int start, int end, char[] dst, int dst_ofs){
+            if (src instanceof String)
+                ((String)src).getChars(start,end,dst,dst_ofs);
+            else if (src instanceof StringBuilder)
+                ((StringBuilder)src).getChars(start,end,dst,dst_ofs);
+            else {
+                for (int cc = start; cc < end; cc++){
+                    dst[dst_ofs++] = src.charAt(cc);
+                }
+            }
+        }
+    }
+}
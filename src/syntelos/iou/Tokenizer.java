@@ -0,0 +1,320 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 2018, John Pritchard, Syntelos
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package syntelos.iou;
+
+import java.nio.CharBuffer;
+
+/**
+ * <p> Incremental line tokenizer.  A subclass lexes one line at a
+ * time from a {@link Reader}, given the lexer state at the start of
+ * the line, and returns the state at the end of the line.  For
+ * example, the state may note an open block comment or string. </p>
+ *
+ * <p> The tokenizer keeps the start offset and entry state of each
+ * line.  Following an edit, it adjusts the line table and re-lexes
+ * from the damaged line, until reaching an unchanged line whose entry
+ * state is unchanged.  The remainder of the document is known to lex
+ * as before, so that the cost of an edit is proportional to the
+ * extent of its effect rather than the size of the document. </p>
+ *
+ * <p> The line table has a gap at the last edit.  The starts of the
+ * lines following the gap are held as distances from the end of the
+ * text, and so are unchanged by an edit preceding them.  Adjusting
+ * the table costs the lines removed and inserted, and the lines
+ * crossed in moving the gap from the previous edit. </p>
+ *
+ * <p> Edits are reported as for
+ * <code>`TextWatcher.onTextChanged'</code>: following the
+ * replacement of <code>`before'</code> characters from
+ * <code>`start'</code> with <code>`count'</code> characters.  The
+ * tokenizer must see every edit from its {@link #reset(CharSequence)}.
+ * </p>
+ *
+ * <p> Lines are delimited by <code>'\n'</code>.  Line numbers and
+ * offsets are from zero.  Lexer states are not negative. </p>
+ *
+ * <h3>Not MT Safe</h3>
+ *
+ * <p> Use the instance as a synchronization monitor when shared
+ * among threads. </p>
+ */
+public abstract class Tokenizer
+    extends Object
+{
+    /**
+     * Entry state of the first line.
+     */
+    public final static int INITIAL = 0;
+
+
+    /**
+     * Line start offsets, ascending from zero before the gap, and
+     * distances from the end of the text following the gap
+     */
+    private int[] starts = new int[0x100];
+    /**
+     * Lexer state at the start of each line
+     */
+    private int[] states = new int[0x100];
+
+    private int lines = 1;
+    /**
+     * Line following the gap in the line table.  The gap is
+     * <code>`(starts.length-lines)'</code> entries long.
+     */
+    private int gap = 1;
+
+    private int length = 0;
+    /**
+     * Lines lexed by the last reset or edit, from (inclusive) and to
+     * (exclusive)
+     */
+    private int lexed_from, lexed_to;
+
+
+    protected Tokenizer(){
+	super();
+    }
+
+
+    /**
+     * Lex one line.
+     *
+     * @param in Reader positioned at the start of the line, and
+     * limited at the end of the line including its line feed
+     * @param line Line number
+     * @param state Lexer state at the start of the line
+     *
+     * @return Lexer state at the end of the line
+     */
+    protected abstract int lex(Reader in, int line, int state);
+
+
+    public final int lines(){
+	return this.lines;
+    }
+    public final int length(){
+	return this.length;
+    }
+    /**
+     * @return Line containing the offset
+     */
+    public final int lineOf(int offset){
+	int lo = 0, hi = (this.lines-1);
+	while (lo < hi){
+	    int mid = ((lo+hi+1)>>>1);
+	    if (this.start(mid) <= offset)
+		lo = mid;
+	    else
+		hi = (mid-1);
+	}
+	return lo;
+    }
+    public final int lineStart(int line){
+	if (-1 < line && line < this.lines)
+	    return this.start(line);
+	else
+	    throw new IllegalArgumentException(String.valueOf(line));
+    }
+    /**
+     * @return Offset following the line, including its line feed
+     */
+    public final int lineEnd(int line){
+	if (-1 < line && line < this.lines)
+	    return ((line+1) < this.lines)?(this.start(line+1)):(this.length);
+	else
+	    throw new IllegalArgumentException(String.valueOf(line));
+    }
+    /**
+     * @return Lexer state at the start of the line
+     */
+    public final int state(int line){
+	if (-1 < line && line < this.lines)
+	    return this.states[this.index(line)];
+	else
+	    throw new IllegalArgumentException(String.valueOf(line));
+    }
+    /**
+     * @return First line lexed by the last reset or edit
+     */
+    public final int lexedFrom(){
+	return this.lexed_from;
+    }
+    /**
+     * @return Line following the last lexed by the last reset or
+     * edit
+     */
+    public final int lexedTo(){
+	return this.lexed_to;
+    }
+    /**
+     * Rebuild the line table, and lex the whole text.
+     */
+    public void reset(CharSequence text){
+	this.lines = 1;
+	this.gap = 1;
+	this.length = 0;
+	this.starts[0] = 0;
+	this.states[0] = INITIAL;
+
+	this.edit(text,0,0,text.length());
+    }
+    /**
+     * Following the replacement of <code>`before'</code> characters
+     * from <code>`start'</code> with <code>`count'</code> characters
+     * in the text, re-lex from the damaged line until the lexer state
+     * converges.
+     *
+     * @param text Text following the edit
+     */
+    public void edit(CharSequence text, int start, int before, int count){
+	if (-1 < start && -1 < before && -1 < count && (start+before) <= this.length &&
+	    (this.length-before+count) == text.length())
+	{
+	    final int line = this.lineOf(start);
+	    /*
+	     * Remove the starts of the lines whose line feed was
+	     * removed.  The following lines are held from the end of
+	     * the text, and need no shift.
+	     */
+	    int rm_from = (line+1), rm_to = rm_from;
+	    while (rm_to < this.lines && this.start(rm_to) <= (start+before)){
+		rm_to += 1;
+	    }
+	    this.move(rm_to);
+	    this.gap = rm_from;
+	    this.lines -= (rm_to-rm_from);
+	    this.length = text.length();
+	    /*
+	     * Insert the starts of the lines whose line feed was
+	     * inserted
+	     */
+	    for (int cc = start, end = (start+count); cc < end; cc++){
+		if ('\n' == text.charAt(cc)){
+		    if (this.lines == this.starts.length)
+			this.grow();
+
+		    this.starts[this.gap] = (cc+1);
+		    this.states[this.gap] = -1;
+		    this.gap += 1;
+		    this.lines += 1;
+		}
+	    }
+
+	    this.relex(text,line,(start+count));
+	}
+	else
+	    throw new IllegalArgumentException(String.format("Edit (%d,%d,%d) of %d to %d",start,before,count,this.length,text.length()));
+    }
+    /**
+     * Lex from the line until reaching a line at or following the
+     * offset with an unchanged entry state.
+     */
+    private void relex(CharSequence text, int line, int clean){
+	this.lexed_from = line;
+
+	if (0 < this.length){
+	    final int[] states = this.states;
+	    final Reader in = new Reader(CharBuffer.wrap(text));
+	    final CharBuffer source = in.source;
+
+	    int state = states[this.index(line)];
+	    int ln = line;
+	    int begin = this.start(ln);
+	    while (ln < this.lines){
+		int end = ((ln+1) < this.lines)?(this.start(ln+1)):(this.length);
+
+		source.limit(end);
+		source.position(begin);
+
+		state = this.lex(in,ln,state);
+
+		ln += 1;
+		begin = end;
+
+		if (ln < this.lines){
+		    int ix = this.index(ln);
+		    if (begin >= clean && state == states[ix])
+			break;
+		    else
+			states[ix] = state;
+		}
+	    }
+	    this.lexed_to = ln;
+	}
+	else {
+	    this.lexed_to = line;
+	}
+    }
+    /**
+     * @return Table index of the line
+     */
+    private int index(int line){
+	if (line < this.gap)
+	    return line;
+	else
+	    return (line+(this.starts.length-this.lines));
+    }
+    /**
+     * @return Start offset of the line
+     */
+    private int start(int line){
+	if (line < this.gap)
+	    return this.starts[line];
+	else
+	    return (this.length-this.starts[line+(this.starts.length-this.lines)]);
+    }
+    /**
+     * Move the gap to precede the line, converting the starts of the
+     * lines crossed.
+     */
+    private void move(int line){
+	final int[] starts = this.starts;
+	final int[] states = this.states;
+	final int size = (starts.length-this.lines);
+
+	while (this.gap > line){
+	    this.gap -= 1;
+	    int to = (this.gap+size);
+	    starts[to] = (this.length-starts[this.gap]);
+	    states[to] = states[this.gap];
+	}
+	while (this.gap < line){
+	    int from = (this.gap+size);
+	    starts[this.gap] = (this.length-starts[from]);
+	    states[this.gap] = states[from];
+	    this.gap += 1;
+	}
+    }
+    /**
+     * Double the line table, keeping the lines following the gap at
+     * its end.
+     */
+    private void grow(){
+	final int size = (this.starts.length<<1);
+	final int tail = (this.lines-this.gap);
+	int[] starts = new int[size];
+	int[] states = new int[size];
+	System.arraycopy(this.starts,0,starts,0,this.gap);
+	System.arraycopy(this.states,0,states,0,this.gap);
+	System.arraycopy(this.starts,(this.starts.length-tail),starts,(size-tail),tail);
+	System.arraycopy(this.states,(this.states.length-tail),states,(size-tail),tail);
+	this.starts = starts;
+	this.states = states;
+    }
+}
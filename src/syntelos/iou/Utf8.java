@@ -30,16 +30,25 @@ package syntelos.iou;
  * <p> We do not use an ISO UCS code signature, and we do not use a
  * Java Data I/O- style strlen prefix.  </p>
  *
+ * <p> Supplementary characters are four byte sequences in UTF-8, and
+ * surrogate pairs in Java.  An unpaired surrogate is encoded as
+ * U+FFFD, in the same three bytes.  Overlong sequences, encoded
+ * surrogates and code points beyond U+10FFFF are malformed. </p>
+ *
+ * <p> The array and buffer codecs write into caller supplied storage
+ * presized with {@link #encoded(char[],int,int) encoded} or {@link
+ * #decoded(byte[],int,int) decoded}.  Runs of ASCII are copied eight
+ * units per step. </p>
+ *
  * @author John Pritchard (@syntelos)
  * @since 1.1
  */
 public abstract class Utf8 {
 
     /**
-     * Decode UTF-8 input, terminates decoding at a null character,
-     * value 0x0.
+     * Decode UTF-8 input.
      * 
-     * @exception alto.sys.Error.State Bad format.
+     * @exception java.lang.IllegalStateException Bad format.
      */
     public final static char[] decode( byte[] code){
 
@@ -48,73 +57,686 @@ public abstract class Utf8 {
         return decode(code,0,code.length);
     }
     /**
-     * Decode UTF-8 input, terminates decoding at a null character,
-     * value 0x0.
+     * Decode UTF-8 input.
      * 
-     * @exception alto.sys.Error.State Bad format.
+     * @exception java.lang.IllegalStateException Bad format.
      */
     public final static char[] decode( byte[] code, int off, int many){
 
         if ( null == code || 0 >= code.length) 
             return null;
         else {
-            Chbuf strbuf = new Chbuf(code.length);
-            int trm = (off+many);
-            int ch, ch2, ch3;
-            char tmpc;
-            for ( int cc = off; cc < trm; ){
-                ch = (code[cc]&0xff);
-                switch (ch >> 4) {
-                case 0:
-                case 1:
-                case 2:
-                case 3:
-                case 4:
-                case 5:
-                case 6:
-                case 7:
-                    cc += 1;
-                    tmpc = (char)ch; // for debugging
-                    strbuf.append(tmpc);
+            char[] re = new char[decoded(code,off,many)];
+
+            decode(code,off,many,re,0);
+
+            return re;
+        }
+    }
+    /**
+     * Decode UTF-8 input into the destination.
+     * 
+     * @param dst Destination presized with {@link
+     * #decoded(byte[],int,int) decoded}
+     *
+     * @return Number of characters written to the destination
+     *
+     * @exception java.lang.IllegalStateException Bad format, including
+     * a truncated sequence at the end of the input.
+     */
+    public final static int decode( byte[] src, int off, int many, char[] dst, int dst_ofs){
+
+        int s = off, z = (off+many), d = dst_ofs;
+
+        while (s < z){
+            /*
+             * ASCII run
+             */
+            for (int z8 = (z-8); s <= z8; s += 8, d += 8){
+
+                if (0 != ((src[s]|src[s+1]|src[s+2]|src[s+3]|src[s+4]|src[s+5]|src[s+6]|src[s+7]) & 0x80))
                     break;
-                case 12: 
-                case 13:
-                    cc += 2;
-                    if (cc > trm)
+                else {
+                    dst[d  ] = (char)src[s  ];
+                    dst[d+1] = (char)src[s+1];
+                    dst[d+2] = (char)src[s+2];
+                    dst[d+3] = (char)src[s+3];
+                    dst[d+4] = (char)src[s+4];
+                    dst[d+5] = (char)src[s+5];
+                    dst[d+6] = (char)src[s+6];
+                    dst[d+7] = (char)src[s+7];
+                }
+            }
+            while (s < z && 0 <= src[s]){
+
+                dst[d++] = (char)src[s++];
+            }
+            /*
+             * Multi-byte run
+             */
+            while (s < z && 0 > src[s]){
+                /*
+                 * Well formed three byte sequence (CJK)
+                 */
+                if (0xE0 == (src[s] & 0xF0) && (s+2) < z && 0x80 == (src[s+1] & 0xC0) && 0x80 == (src[s+2] & 0xC0)){
+
+                    char c = (char)(((src[s] & 0x0F) << 12)|((src[s+1] & 0x3F) << 6)|(src[s+2] & 0x3F));
+                    if (0x800 <= c && !Character.isSurrogate(c)){
+                        dst[d++] = c;
+                        s += 3;
+                        continue;
+                    }
+                }
+                int n = Sequence(src[s]);
+                if (0 == n || (s+n) > z)
+                    throw new IllegalStateException();
+                else {
+                    d = Decode(src,s,n,dst,d);
+                    s += n;
+                }
+            }
+        }
+        return (d-dst_ofs);
+    }
+    /**
+     * Decode UTF-8 input from the source position into the
+     * destination position.  Decoding stops at a sequence that is
+     * incomplete at the source limit, or that would overflow the
+     * destination, leaving it unconsumed.
+     *
+     * @return Number of characters written to the destination
+     *
+     * @exception java.lang.IllegalStateException Bad format.
+     */
+    public final static int decode( java.nio.ByteBuffer src, java.nio.CharBuffer dst){
+
+        if (src.hasArray() && dst.hasArray()){
+
+            byte[] sa = src.array();
+            int s0 = (src.arrayOffset()+src.position());
+            int s = s0, z = (s0+src.remaining());
+
+            char[] da = dst.array();
+            int d0 = (dst.arrayOffset()+dst.position());
+            int d = d0, dz = (d0+dst.remaining());
+
+            while (s < z && d < dz){
+
+                int b = sa[s];
+                if (0 <= b){
+                    da[d++] = (char)b;
+                    s += 1;
+                }
+                else {
+                    int n = Sequence(b);
+                    if (0 == n)
                         throw new IllegalStateException();
+                    else if ((s+n) > z || (4 == n && (d+2) > dz))
+                        break;
                     else {
-                        ch2 = (int) (code[cc-1]&0xff);
-                        if (0x80 != (ch2 & 0xC0))
-                            throw new IllegalStateException();
-                        else {
-                            tmpc = (char)(((ch & 0x1F) <<6)|(ch2 & 0x3F));
-                            strbuf.append(tmpc);
-                        }
+                        d = Decode(sa,s,n,da,d);
+                        s += n;
                     }
-                    break;
-                case 14:
-                    cc += 3;
-                    if (cc > trm)
+                }
+            }
+            src.position(src.position()+(s-s0));
+            dst.position(dst.position()+(d-d0));
+            return (d-d0);
+        }
+        else {
+            byte[] seq = new byte[4];
+            char[] out = new char[2];
+            int count = 0;
+
+            while (src.hasRemaining() && dst.hasRemaining()){
+
+                int p = src.position();
+                int b = src.get(p);
+                if (0 <= b){
+                    dst.put((char)b);
+                    src.position(p+1);
+                    count += 1;
+                }
+                else {
+                    int n = Sequence(b);
+                    if (0 == n)
                         throw new IllegalStateException();
+                    else if (n > src.remaining() || (4 == n && 2 > dst.remaining()))
+                        break;
                     else {
-                        ch2 = (code[cc-2]&0xff);
-                        ch3 = (code[cc-1]&0xff);
-                        if ((0x80 != (ch2 & 0xC0)) || (0x80 != (ch3 & 0xC0)))
+                        src.get(seq,0,n);
+                        int m = Decode(seq,0,n,out,0);
+                        dst.put(out,0,m);
+                        count += m;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+    /**
+     * <p> Incremental UTF-8 decoder for chunked input.  A multi-byte
+     * sequence truncated at the end of one input chunk is held, and
+     * completed by the following chunk. </p>
+     *
+     * <pre>
+     * Utf8.Decoder dec = new Utf8.Decoder();
+     * while (0 &lt; (count = in.read(iob,0,iob.length))){
+     *     for (int ofs = 0; ofs &lt; count; ofs += dec.consumed()){
+     *         dec.decode(iob,ofs,(count-ofs));
+     *         out.append(dec.output(),0,dec.produced());
+     *     }
+     * }
+     * dec.finish();
+     * </pre>
+     *
+     * <p> A replacing decoder substitutes U+FFFD for a malformed
+     * sequence, as for a text editor, where a strict decoder throws.
+     * As by the JDK decoder, each maximal prefix of a well formed
+     * sequence, or encoded surrogate, is replaced by one U+FFFD, and
+     * each other malformed byte by one U+FFFD. </p>
+     *
+     * <p> Not MT Safe. </p>
+     */
+    public static class Decoder
+        extends Object
+    {
+        public final static int OUTPUT = 0x2000;//(8K)
+
+        public final static char REPLACEMENT = '\uFFFD';
+
+
+        private final char[] output;
+
+        private final boolean replace;
+
+        private final byte[] pend = new byte[4];
+
+        private int pend_len, pend_need;
+
+        private int consumed, produced;
+
+
+        public Decoder(){
+            this(OUTPUT,false);
+        }
+        /**
+         * @param output Size of the reusable output buffer, at least
+         * two
+         */
+        public Decoder(int output){
+            this(output,false);
+        }
+        /**
+         * @param output Size of the reusable output buffer, at least
+         * two
+         * @param replace Substitute U+FFFD for malformed input
+         */
+        public Decoder(int output, boolean replace){
+            super();
+            if (1 < output){
+                this.output = new char[output];
+                this.replace = replace;
+            }
+            else
+                throw new IllegalArgumentException(String.valueOf(output));
+        }
+
+
+        /**
+         * @return Reusable output buffer
+         */
+        public char[] output(){
+            return this.output;
+        }
+        /**
+         * @return Number of input bytes consumed by the last call to
+         * decode, including bytes held in a partial sequence
+         */
+        public int consumed(){
+            return this.consumed;
+        }
+        /**
+         * @return Number of characters produced by the last call to
+         * decode
+         */
+        public int produced(){
+            return this.produced;
+        }
+        /**
+         * @return Number of bytes held in a partial sequence
+         */
+        public int pending(){
+            return this.pend_len;
+        }
+        /**
+         * Decode into the reusable output buffer from its start.
+         *
+         * @return Number of characters produced
+         */
+        public int decode(byte[] src, int off, int many){
+
+            return this.decode(src,off,many,this.output,0,this.output.length);
+        }
+        /**
+         * @return Substituting U+FFFD for malformed input
+         */
+        public boolean replacing(){
+            return this.replace;
+        }
+        /**
+         * Decode into the destination.  Decoding stops when the
+         * input is consumed or the destination is full.
+         *
+         * @return Number of characters produced
+         *
+         * @exception java.lang.IllegalStateException Bad format, when
+         * not replacing.
+         */
+        public int decode(byte[] src, int off, int many, char[] dst, int dst_ofs, int dst_len){
+
+            final boolean replace = this.replace;
+
+            int s = off, z = (off+many), d = dst_ofs, dz = (dst_ofs+dst_len);
+            /*
+             * Complete a held sequence
+             */
+            if (0 < this.pend_len){
+
+                while (this.pend_len < this.pend_need && s < z &&
+                       ((!replace) || 0x80 == (src[s] & 0xC0)))
+                {
+                    this.pend[this.pend_len++] = src[s++];
+                }
+
+                int bad = (replace)?(Malformed(this.pend,0,this.pend_len,this.pend_need)):(0);
+
+                if (0 != bad || (this.pend_len < this.pend_need && s < z)){
+                    /*
+                     * The held sequence is malformed.  Replace its
+                     * malformed prefix, and each held byte following
+                     * it from a previous call.  Unconsume the bytes
+                     * following it from this call.
+                     */
+                    int held = (this.pend_len-(s-off));
+                    if (0 == bad)
+                        bad = this.pend_len;
+
+                    int repl = (1+Math.max(0,(held-bad)));
+                    if ((d+repl) <= dz){
+                        for (int cc = 0; cc < repl; cc++){
+                            dst[d++] = REPLACEMENT;
+                        }
+                        s = (off+Math.max(0,(bad-held)));
+                        this.pend_len = 0;
+                        this.pend_need = 0;
+                    }
+                    else {
+                        this.pend_len = held;
+                        return this.result(off,off,dst_ofs,d);
+                    }
+                }
+                else if (this.pend_len < this.pend_need){
+
+                    return this.result(off,s,dst_ofs,d);
+                }
+                else if ((d+((4 == this.pend_need)?(2):(1))) > dz){
+                    /*
+                     * Unconsume the completing bytes for the next call
+                     */
+                    int back = (s-off);
+                    this.pend_len -= back;
+                    return this.result(off,off,dst_ofs,d);
+                }
+                else {
+                    d = Decode(this.pend,0,this.pend_need,dst,d);
+                    this.pend_len = 0;
+                    this.pend_need = 0;
+                }
+            }
+
+            while (s < z && d < dz){
+                /*
+                 * ASCII run
+                 */
+                for (int z8 = (z-8), dz8 = (dz-8); s <= z8 && d <= dz8; s += 8, d += 8){
+
+                    if (0 != ((src[s]|src[s+1]|src[s+2]|src[s+3]|src[s+4]|src[s+5]|src[s+6]|src[s+7]) & 0x80))
+                        break;
+                    else {
+                        dst[d  ] = (char)src[s  ];
+                        dst[d+1] = (char)src[s+1];
+                        dst[d+2] = (char)src[s+2];
+                        dst[d+3] = (char)src[s+3];
+                        dst[d+4] = (char)src[s+4];
+                        dst[d+5] = (char)src[s+5];
+                        dst[d+6] = (char)src[s+6];
+                        dst[d+7] = (char)src[s+7];
+                    }
+                }
+                while (s < z && d < dz && 0 <= src[s]){
+
+                    dst[d++] = (char)src[s++];
+                }
+                /*
+                 * Multi-byte sequence
+                 */
+                if (s < z && d < dz){
+
+                    int n = Sequence(src[s]), bad;
+                    if (0 == n){
+                        if (replace){
+                            dst[d++] = REPLACEMENT;
+                            s += 1;
+                        }
+                        else
                             throw new IllegalStateException();
+                    }
+                    else if (replace && 0 != (bad = Malformed(src,s,Math.min(n,(z-s)),n))){
+
+                        dst[d++] = REPLACEMENT;
+                        s += bad;
+                    }
+                    else if ((s+n) > z){
+                        /*
+                         * Hold the partial sequence
+                         */
+                        this.pend_need = n;
+                        while (s < z){
+                            this.pend[this.pend_len++] = src[s++];
+                        }
+                    }
+                    else if (4 == n && (d+2) > dz){
+
+                        break;
+                    }
+                    else {
+                        d = Decode(src,s,n,dst,d);
+                        s += n;
+                    }
+                }
+            }
+            return this.result(off,s,dst_ofs,d);
+        }
+        /**
+         * End of input.
+         *
+         * @exception java.lang.IllegalStateException A partial
+         * sequence is held.
+         */
+        public void finish(){
+            if (0 < this.pend_len){
+                this.reset();
+                throw new IllegalStateException("Truncated UTF-8 sequence.");
+            }
+        }
+        /**
+         * End of input.  When replacing, a held partial sequence
+         * produces U+FFFD into the destination.
+         *
+         * @return Number of characters produced, zero or one
+         *
+         * @exception java.lang.IllegalStateException A partial
+         * sequence is held, when not replacing.
+         */
+        public int finish(char[] dst, int dst_ofs){
+            if (0 < this.pend_len && this.replace){
+                this.reset();
+                dst[dst_ofs] = REPLACEMENT;
+                return 1;
+            }
+            else {
+                this.finish();
+                return 0;
+            }
+        }
+        /**
+         * Discard any partial sequence.
+         */
+        public void reset(){
+            this.pend_len = 0;
+            this.pend_need = 0;
+            this.consumed = 0;
+            this.produced = 0;
+        }
+
+        private int result(int s0, int s, int d0, int d){
+            this.consumed = (s-s0);
+            return (this.produced = (d-d0));
+        }
+    }
+    /**
+     * <p> Incremental UTF-8 encoder for chunked input.  A high
+     * surrogate at the end of one input chunk is held, and paired
+     * with a low surrogate from the following chunk. </p>
+     *
+     * <pre>
+     * Utf8.Encoder enc = new Utf8.Encoder();
+     * while (0 &lt; (count = next(chunk))){
+     *     for (int ofs = 0; ofs &lt; count; ofs += enc.consumed()){
+     *         out.write(enc.output(),0,enc.encode(chunk,ofs,(count-ofs)));
+     *     }
+     * }
+     * out.write(enc.output(),0,enc.finish());
+     * </pre>
+     *
+     * <p> As for {@link Utf8#encode(char[],int,int,byte[],int)}, an
+     * unpaired surrogate is encoded as a three byte sequence. </p>
+     *
+     * <p> Not MT Safe. </p>
+     */
+    public static class Encoder
+        extends Object
+    {
+        public final static int OUTPUT = 0x8000;//(32K)
+
+
+        private final byte[] output;
+
+        private char high;
+
+        private boolean held;
+
+        private int consumed, produced;
+
+
+        public Encoder(){
+            this(OUTPUT);
+        }
+        /**
+         * @param output Size of the reusable output buffer, at least
+         * four
+         */
+        public Encoder(int output){
+            super();
+            if (3 < output)
+                this.output = new byte[output];
+            else
+                throw new IllegalArgumentException(String.valueOf(output));
+        }
+
+
+        /**
+         * @return Reusable output buffer
+         */
+        public byte[] output(){
+            return this.output;
+        }
+        /**
+         * @return Number of input characters consumed by the last
+         * call to encode, including a held high surrogate
+         */
+        public int consumed(){
+            return this.consumed;
+        }
+        /**
+         * @return Number of bytes produced by the last call to encode
+         */
+        public int produced(){
+            return this.produced;
+        }
+        /**
+         * @return A high surrogate is held
+         */
+        public boolean pending(){
+            return this.held;
+        }
+        /**
+         * Encode into the reusable output buffer from its start.
+         *
+         * @return Number of bytes produced
+         */
+        public int encode(char[] src, int off, int many){
+
+            return this.encode(src,off,many,this.output,0,this.output.length);
+        }
+        /**
+         * Encode into the destination.  Encoding stops when the
+         * input is consumed, or the next character would overflow
+         * the destination.
+         *
+         * @return Number of bytes produced
+         */
+        public int encode(char[] src, int off, int many, byte[] dst, int dst_ofs, int dst_len){
+
+            int s = off, z = (off+many), d = dst_ofs, dz = (dst_ofs+dst_len);
+            /*
+             * Complete a held high surrogate
+             */
+            if (this.held && s < z){
+
+                if (Character.isLowSurrogate(src[s])){
+
+                    if ((d+4) > dz)
+                        return this.result(off,s,dst_ofs,d);
+                    else {
+                        int cp = Character.toCodePoint(this.high,src[s++]);
+
+                        dst[d++] = (byte)(0xF0 | ((cp >> 18) & 0x07));
+                        dst[d++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                        dst[d++] = (byte)(0x80 | ((cp >>  6) & 0x3F));
+                        dst[d++] = (byte)(0x80 | (cp & 0x3F));
+                    }
+                }
+                else if ((d+3) > dz)
+                    return this.result(off,s,dst_ofs,d);
+                else
+                    d = Three(this.high,dst,d);
+
+                this.held = false;
+            }
+
+            while (s < z){
+                char ch = src[s];
+                if (0x80 > ch){
+                    if (d < dz){
+                        dst[d++] = (byte)ch;
+                        s += 1;
+                    }
+                    else
+                        break;
+                }
+                else if (Character.isHighSurrogate(ch)){
+                    if ((s+1) < z){
+                        int n = (Character.isLowSurrogate(src[s+1]))?(2):(1);
+                        int b = (2 == n)?(4):(3);
+                        if ((d+b) > dz)
+                            break;
                         else {
-                            tmpc = (char)(((ch  & 0x0F) << 12)|
-                                          ((ch2 & 0x3F) << 6) |
-                                          ((ch3 & 0x3F) << 0));
-                            strbuf.append(tmpc);
+                            d += Utf8.encode(src,s,n,dst,d);
+                            s += n;
                         }
                     }
-                    break;
-                default:
+                    else {
+                        /*
+                         * Hold the high surrogate at the end of input
+                         */
+                        this.high = ch;
+                        this.held = true;
+                        s += 1;
+                    }
+                }
+                else {
+                    int b = (0x07FF >= ch)?(2):(3);
+                    if ((d+b) > dz)
+                        break;
+                    else {
+                        d += Utf8.encode(src,s,1,dst,d);
+                        s += 1;
+                    }
+                }
+            }
+            return this.result(off,s,dst_ofs,d);
+        }
+        /**
+         * End of input.  A held high surrogate is encoded alone, as
+         * U+FFFD.
+         *
+         * @return Number of bytes produced into the reusable output
+         * buffer from its start
+         */
+        public int finish(){
+            if (this.held){
+                this.held = false;
+                return (this.produced = Three(this.high,this.output,0));
+            }
+            else
+                return (this.produced = 0);
+        }
+        /**
+         * Discard any held high surrogate.
+         */
+        public void reset(){
+            this.held = false;
+            this.consumed = 0;
+            this.produced = 0;
+        }
+
+        private int result(int s0, int s, int d0, int d){
+            this.consumed = (s-s0);
+            return (this.produced = (d-d0));
+        }
+        /**
+         * @return Offset following the three byte sequence, of U+FFFD
+         * for an unpaired surrogate
+         */
+        private static int Three(char ch, byte[] dst, int d){
+            if (Character.isSurrogate(ch))
+                ch = Decoder.REPLACEMENT;
+
+            dst[d++] = (byte)(0xE0 | ((ch >> 12) & 0x0F));
+            dst[d++] = (byte)(0x80 | ((ch >>  6) & 0x3F));
+            dst[d++] = (byte)(0x80 | (ch & 0x3F));
+            return d;
+        }
+    }
+    /**
+     * Returns the number of characters in the UTF-8 input.
+     *
+     * @exception java.lang.IllegalStateException Bad lead byte.
+     */
+    public final static int decoded( byte[] src, int off, int many){
+
+        int count = 0;
+
+        for (int s = off, z = (off+many); s < z; ){
+
+            int b = src[s];
+            if (0 <= b){
+                s += 1;
+                count += 1;
+            }
+            else {
+                int n = Sequence(b);
+                if (0 == n)
                     throw new IllegalStateException();
+                else {
+                    s += n;
+                    count += (4 == n)?(2):(1);
                 }
             }
-            return strbuf.toCary();
         }
+        return count;
     }
 
     /**
@@ -128,60 +750,212 @@ public abstract class Utf8 {
             if (1 > strlen)
                 return null;
             else {
-                byte[] re = new byte[strlen];
-                char ch, sch;
-                for ( int cc = 0, bc = 0; cc < strlen; cc++){
-                    ch = str[cc];
-                    if (0x80 > ch)
-                        re[bc++] = (byte)ch;
-                    else if (0x07FF < ch){
-                        int nlen = re.length+2;
-                        byte[] copier = new byte[nlen];
-                        System.arraycopy(re,0,copier,0,bc);
-                        re = copier;
-                        re[bc++] = (byte)(0xE0 | ((ch >> 12) & 0x0F));
-                        re[bc++] = (byte)(0x80 | ((ch >>  6) & 0x3F));
-                        re[bc++] = (byte)(0x80 | (ch & 0x3F));
+                byte[] re = new byte[encoded(str,0,strlen)];
+
+                encode(str,0,strlen,re,0);
+
+                return re;
+            }
+        }
+    }
+    /**
+     * Encode characters in UTF-8 into the destination.
+     *
+     * @param dst Destination presized with {@link
+     * #encoded(char[],int,int) encoded}
+     *
+     * @return Number of bytes written to the destination
+     */
+    public final static int encode( char[] src, int off, int many, byte[] dst, int dst_ofs){
+
+        int s = off, z = (off+many), d = dst_ofs;
+
+        while (s < z){
+            /*
+             * ASCII run
+             */
+            for (int z8 = (z-8); s <= z8; s += 8, d += 8){
+
+                if (0x80 <= (src[s]|src[s+1]|src[s+2]|src[s+3]|src[s+4]|src[s+5]|src[s+6]|src[s+7]))
+                    break;
+                else {
+                    dst[d  ] = (byte)src[s  ];
+                    dst[d+1] = (byte)src[s+1];
+                    dst[d+2] = (byte)src[s+2];
+                    dst[d+3] = (byte)src[s+3];
+                    dst[d+4] = (byte)src[s+4];
+                    dst[d+5] = (byte)src[s+5];
+                    dst[d+6] = (byte)src[s+6];
+                    dst[d+7] = (byte)src[s+7];
+                }
+            }
+            char ch;
+            while (s < z && 0x80 > (ch = src[s])){
+
+                dst[d++] = (byte)ch;
+                s += 1;
+            }
+            /*
+             * Multi-byte run
+             */
+            while (s < z && 0x80 <= (ch = src[s])){
+                s += 1;
+
+                if (0x07FF >= ch){
+                    dst[d++] = (byte)(0xC0 | ((ch >>  6) & 0x1F));
+                    dst[d++] = (byte)(0x80 | (ch & 0x3F));
+                }
+                else if (Character.isHighSurrogate(ch) && s < z && Character.isLowSurrogate(src[s])){
+
+                    int cp = Character.toCodePoint(ch,src[s++]);
+
+                    dst[d++] = (byte)(0xF0 | ((cp >> 18) & 0x07));
+                    dst[d++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    dst[d++] = (byte)(0x80 | ((cp >>  6) & 0x3F));
+                    dst[d++] = (byte)(0x80 | (cp & 0x3F));
+                }
+                else {
+                    if (Character.isSurrogate(ch))
+                        ch = Decoder.REPLACEMENT;
+
+                    dst[d++] = (byte)(0xE0 | ((ch >> 12) & 0x0F));
+                    dst[d++] = (byte)(0x80 | ((ch >>  6) & 0x3F));
+                    dst[d++] = (byte)(0x80 | (ch & 0x3F));
+                }
+            }
+        }
+        return (d-dst_ofs);
+    }
+    /**
+     * Encode characters from the source position into the
+     * destination position.  Encoding stops at a character that
+     * would overflow the destination, or at a high surrogate at the
+     * source limit, leaving it unconsumed.
+     *
+     * @return Number of bytes written to the destination
+     */
+    public final static int encode( java.nio.CharBuffer src, java.nio.ByteBuffer dst){
+
+        if (src.hasArray() && dst.hasArray()){
+
+            char[] sa = src.array();
+            int s0 = (src.arrayOffset()+src.position());
+            int s = s0, z = (s0+src.remaining());
+
+            byte[] da = dst.array();
+            int d0 = (dst.arrayOffset()+dst.position());
+            int d = d0, dz = (d0+dst.remaining());
+
+            while (s < z){
+
+                char ch = sa[s];
+                if (0x80 > ch){
+                    if (d < dz){
+                        da[d++] = (byte)ch;
+                        s += 1;
+                    }
+                    else
+                        break;
+                }
+                else {
+                    int n = Encoded(sa,s,z);
+                    if (0 == n || (d+n) > dz)
+                        break;
+                    else {
+                        int cn = (4 == n)?(2):(1);
+
+                        d += encode(sa,s,cn,da,d);
+
+                        s += cn;
                     }
+                }
+            }
+            src.position(src.position()+(s-s0));
+            dst.position(dst.position()+(d-d0));
+            return (d-d0);
+        }
+        else {
+            char[] seq = new char[2];
+            byte[] out = new byte[4];
+            int count = 0;
+
+            while (src.hasRemaining()){
+
+                int p = src.position();
+                char ch = src.get(p);
+                if (0x80 > ch){
+                    if (dst.hasRemaining()){
+                        dst.put((byte)ch);
+                        src.position(p+1);
+                        count += 1;
+                    }
+                    else
+                        break;
+                }
+                else {
+                    int cn = 1;
+                    seq[0] = ch;
+                    if (Character.isHighSurrogate(ch)){
+                        if (1 < src.remaining()){
+                            char lo = src.get(p+1);
+                            if (Character.isLowSurrogate(lo)){
+                                seq[1] = lo;
+                                cn = 2;
+                            }
+                        }
+                        else
+                            break;
+                    }
+                    int n = Encoded(seq,0,cn);
+                    if (n > dst.remaining())
+                        break;
                     else {
-                        int nlen = re.length+1;
-                        byte[] copier = new byte[nlen];
-                        System.arraycopy(re,0,copier,0,bc);
-                        re = copier;
-                        re[bc++] = (byte)(0xC0 | ((ch >>  6) & 0x1F));
-                        re[bc++] = (byte)(0x80 | (ch & 0x3F));
+                        encode(seq,0,cn,out,0);
+                        dst.put(out,0,n);
+                        src.position(p+cn);
+                        count += n;
                     }
                 }
-                return re;
             }
+            return count;
         }
     }
 
     /**
-     * Encode string in UTF-8.
+     * Encode string in UTF-8.  The null character is encoded in two
+     * bytes, as in Java Data I/O.
      */
     public final static Bbuf encode( char[] str, Bbuf bytbuf)
         throws java.io.IOException
     {
 
         if ( null == bytbuf) 
-            bytbuf = new Bbuf( str.length);
+            bytbuf = new Bbuf( (null == str)?(0):(str.length));
 
         if ( null == str || 0 >= str.length) 
             return bytbuf;
         else {
-            char ch, sch;
+            char ch;
             for ( int cc = 0, len = str.length; cc < len; cc++){
                 ch = str[cc];
                 if ((0x0 < ch) && (0x80 > ch))
                     bytbuf.write(ch);
-                else if (0x07FF < ch){
-                    bytbuf.write(0xE0 | ((ch >> 12) & 0x0F));
-                    bytbuf.write(0x80 | ((ch >>  6) & 0x3F));
+                else if (0x07FF >= ch){
+                    bytbuf.write(0xC0 | ((ch >>  6) & 0x1F));
                     bytbuf.write(0x80 | (ch & 0x3F));
                 }
+                else if (Character.isHighSurrogate(ch) && (cc+1) < len && Character.isLowSurrogate(str[cc+1])){
+
+                    int cp = Character.toCodePoint(ch,str[++cc]);
+
+                    bytbuf.write(0xF0 | ((cp >> 18) & 0x07));
+                    bytbuf.write(0x80 | ((cp >> 12) & 0x3F));
+                    bytbuf.write(0x80 | ((cp >>  6) & 0x3F));
+                    bytbuf.write(0x80 | (cp & 0x3F));
+                }
                 else {
-                    bytbuf.write(0xC0 | ((ch >>  6) & 0x1F));
+                    bytbuf.write(0xE0 | ((ch >> 12) & 0x0F));
+                    bytbuf.write(0x80 | ((ch >>  6) & 0x3F));
                     bytbuf.write(0x80 | (ch & 0x3F));
                 }
             }
@@ -240,11 +1014,18 @@ public abstract class Utf8 {
 
         if ( null == str || 0 >= str.length) return 0;
 
+        return encoded(str,0,str.length);
+    }
+    /**
+     * Returns the length of the characters encoded in UTF-8.
+     */
+    public final static int encoded( char[] str, int off, int many){
+
         int bytlen = 0;
 
-        char ch, sch;
+        char ch;
 
-        for ( int c = 0; c < str.length; c++){
+        for ( int c = off, z = (off+many); c < z; c++){
 
             ch = str[c];
 
@@ -256,12 +1037,169 @@ public abstract class Utf8 {
 
                 bytlen += 2;
 
+            else if ( Character.isHighSurrogate(ch) && (c+1) < z && Character.isLowSurrogate(str[c+1])){
+
+                bytlen += 4;
+
+                c += 1;
+            }
             else 
                 bytlen += 3;
-
         }
-
         return bytlen;
     }
 
+    /**
+     * @return Length of the UTF-8 sequence from its lead byte, or zero
+     * for a continuation or invalid byte, including the overlong
+     * lead bytes C0 and C1
+     */
+    private final static int Sequence(int b){
+        switch ((b & 0xff) >> 4){
+        case 0:
+        case 1:
+        case 2:
+        case 3:
+        case 4:
+        case 5:
+        case 6:
+        case 7:
+            return 1;
+        case 12:
+            if (0xC2 <= (b & 0xff))
+                return 2;
+            else
+                return 0;
+        case 13:
+            return 2;
+        case 14:
+            return 3;
+        case 15:
+            if (0xF5 > (b & 0xff))
+                return 4;
+            else
+                return 0;
+        default:
+            return 0;
+        }
+    }
+    /**
+     * @return Length in UTF-8 of the character at the source index,
+     * or zero for a high surrogate at the source limit
+     */
+    private final static int Encoded(char[] src, int s, int z){
+        char ch = src[s];
+        if (0x80 > ch)
+            return 1;
+        else if (0x07FF >= ch)
+            return 2;
+        else if (Character.isHighSurrogate(ch)){
+            if ((s+1) < z){
+                if (Character.isLowSurrogate(src[s+1]))
+                    return 4;
+                else
+                    return 3;
+            }
+            else
+                return 0;
+        }
+        else
+            return 3;
+    }
+    /**
+     * @param m Available bytes of the sequence, from one to
+     * <code>`n'</code>
+     * @param n Sequence length from the lead byte
+     *
+     * @return Zero for a well formed sequence or prefix of a
+     * sequence, otherwise the length of its maximal well formed
+     * prefix, or of an encoded surrogate, to be replaced by one
+     * U+FFFD
+     */
+    private final static int Malformed(byte[] src, int s, int m, int n){
+        if (2 < n && 1 < m){
+            /*
+             * Overlong and beyond U+10FFFF forms are distinguished
+             * by the second byte
+             */
+            int ch = (src[s] & 0xff), ch2 = (src[s+1] & 0xff);
+            if ((0xE0 == ch && 0xA0 > ch2) ||
+                (0xF0 == ch && 0x90 > ch2) || (0xF4 == ch && 0x90 <= ch2))
+            {
+                return 1;
+            }
+        }
+        for (int k = 1; k < m; k++){
+            if (0x80 != (src[s+k] & 0xC0))
+                return k;
+        }
+        /*
+         * An encoded surrogate is replaced as one sequence, as by
+         * the JDK decoder
+         */
+        if (3 == m && 0xED == (src[s] & 0xff) && 0xA0 <= (src[s+1] & 0xff))
+            return 3;
+        else
+            return 0;
+    }
+    /**
+     * Decode one multi-byte sequence of length n.
+     *
+     * @return Destination index following the decoded character(s)
+     */
+    private final static int Decode(byte[] src, int s, int n, char[] dst, int d){
+        int ch = (src[s] & 0xff), ch2, ch3, ch4;
+        switch (n){
+        case 1:
+            dst[d++] = (char)ch;
+            return d;
+        case 2:
+            ch2 = (src[s+1] & 0xff);
+            if (0x80 != (ch2 & 0xC0))
+                throw new IllegalStateException();
+            else {
+                dst[d++] = (char)(((ch & 0x1F) << 6)|(ch2 & 0x3F));
+                return d;
+            }
+        case 3:
+            ch2 = (src[s+1] & 0xff);
+            ch3 = (src[s+2] & 0xff);
+            if ((0x80 != (ch2 & 0xC0)) || (0x80 != (ch3 & 0xC0)))
+                throw new IllegalStateException();
+            else {
+                char c = (char)(((ch  & 0x0F) << 12)|
+                                ((ch2 & 0x3F) << 6) |
+                                ((ch3 & 0x3F) << 0));
+
+                if (0x800 > c || Character.isSurrogate(c))
+                    throw new IllegalStateException();
+                else {
+                    dst[d++] = c;
+                    return d;
+                }
+            }
+        case 4:
+            ch2 = (src[s+1] & 0xff);
+            ch3 = (src[s+2] & 0xff);
+            ch4 = (src[s+3] & 0xff);
+            if ((0x80 != (ch2 & 0xC0)) || (0x80 != (ch3 & 0xC0)) || (0x80 != (ch4 & 0xC0)))
+                throw new IllegalStateException();
+            else {
+                int cp = (((ch  & 0x07) << 18)|
+                          ((ch2 & 0x3F) << 12)|
+                          ((ch3 & 0x3F) << 6) |
+                          ((ch4 & 0x3F) << 0));
+
+                if (0x10000 > cp || 0x10FFFF < cp)
+                    throw new IllegalStateException();
+                else {
+                    dst[d++] = Character.highSurrogate(cp);
+                    dst[d++] = Character.lowSurrogate(cp);
+                    return d;
+                }
+            }
+        default:
+            throw new IllegalStateException();
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+/**
+ * <p> Timed case for the benchmark mains in this directory.  Each
+ * case runs a number of warm up iterations, then reports the median
+ * and the minimum of its timed iterations. </p>
+ *
+ * <p> These are desktop JDK measurements: they compare alternatives
+ * on one machine, and do not predict times on a device. </p>
+ */
+public abstract class Bench
+    extends Object
+{
+    /**
+     * Result of the last run, consumed so that the work is not
+     * eliminated.
+     */
+    protected static volatile long Sink;
+
+
+    public final String name;
+
+    /**
+     * Units processed per iteration, for the rate.
+     */
+    public final long units;
+
+    public final String unit;
+
+
+    protected Bench(String name, long units, String unit){
+        super();
+        this.name = name;
+        this.units = units;
+        this.unit = unit;
+    }
+
+
+    /**
+     * Untimed preparation for each iteration.
+     */
+    protected void setup()
+        throws Exception
+    {
+    }
+    /**
+     * One iteration.
+     *
+     * @return A value depending on the work
+     */
+    protected abstract long run()
+        throws Exception;
+
+    /**
+     * Run and report.
+     *
+     * @return Median nanoseconds per iteration
+     */
+    public long time(int warm, int runs)
+        throws Exception
+    {
+        for (int cc = 0; cc < warm; cc++){
+
+            this.setup();
+
+            Sink += this.run();
+        }
+
+        long[] times = new long[runs];
+        for (int cc = 0; cc < runs; cc++){
+
+            this.setup();
+
+            long start = System.nanoTime();
+
+            Sink += this.run();
+
+            times[cc] = (System.nanoTime()-start);
+        }
+        java.util.Arrays.sort(times);
+
+        long median = times[runs>>1];
+
+        System.out.printf("%-40s %10.3f ms  (min %10.3f)  %12.3f M%s/s%n",
+                          this.name,(median/1e6),(times[0]/1e6),
+                          (this.units*1e3/median),this.unit);
+
+        return median;
+    }
+
+
+    /**
+     * @return Integer argument, or the default
+     */
+    public static int Arg(String[] argv, int idx, int def){
+        if (idx < argv.length)
+            return Integer.parseInt(argv[idx]);
+        else
+            return def;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * <p> Time to the first character, and heap retained, for the three
+ * ways of opening a text file: {@link Chbuf#read(java.io.File)}
+ * through a chunk buffer, {@link Chbuf#readMapped(java.io.File)}
+ * decoding from a mapping, and the lazy {@link Chbuf#view(java.io.File)}.
+ * The view is also timed to a character in the middle of the file,
+ * which indexes the blocks before it. </p>
+ *
+ * <p> The file is mostly ASCII, with some two and three byte
+ * sequences.  The page cache holds it after the first run, so these
+ * are warm file times. </p>
+ *
+ * <pre>
+ * java -cp /tmp/iou syntelos.iou.ChmapBench [mbytes ...]
+ * </pre>
+ */
+public class ChmapBench {
+
+    private final static int RUNS = 5;
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        int[] sizes;
+        if (0 < argv.length){
+            sizes = new int[argv.length];
+            for (int cc = 0; cc < argv.length; cc++){
+                sizes[cc] = Bench.Arg(argv,cc,1);
+            }
+        }
+        else
+            sizes = new int[]{8, 64};
+
+        for (int mbytes : sizes){
+
+            final File file = File.createTempFile("chmap",".txt");
+            file.deleteOnExit();
+            final int size = Text(file,(mbytes<<20));
+
+            final int middle = (Chbuf.read(file).length()>>1);
+            if (Chbuf.read(file).charAt(middle) != Chbuf.view(file).charAt(middle))
+                throw new IllegalStateException("Content differs");
+
+            new Bench(("read first "+mbytes+"M"),size,"B"){
+                protected long run() throws Exception {
+                    return Chbuf.read(file).charAt(0);
+                }
+            }.time(1,RUNS);
+
+            new Bench(("readMapped first "+mbytes+"M"),size,"B"){
+                protected long run() throws Exception {
+                    return Chbuf.readMapped(file).charAt(0);
+                }
+            }.time(1,RUNS);
+
+            new Bench(("view first "+mbytes+"M"),size,"B"){
+                protected long run() throws Exception {
+                    return Chbuf.view(file).charAt(0);
+                }
+            }.time(1,RUNS);
+
+            new Bench(("view middle "+mbytes+"M"),size,"B"){
+                protected long run() throws Exception {
+                    return Chbuf.view(file).charAt(middle);
+                }
+            }.time(1,RUNS);
+
+            Heap("read",file);
+            Heap("readMapped",file);
+            Heap("view",file);
+
+            file.delete();
+        }
+    }
+    /**
+     * Print the heap retained by the opened text, after touching
+     * its first character.
+     */
+    private static void Heap(String how, File file)
+        throws Exception
+    {
+        long before = Used();
+
+        CharSequence text;
+        if ("read".equals(how))
+            text = Chbuf.read(file);
+        else if ("readMapped".equals(how))
+            text = Chbuf.readMapped(file);
+        else
+            text = Chbuf.view(file);
+
+        text.charAt(0);
+
+        long after = Used();
+
+        System.out.printf("%-40s %10.3f MB heap  (%d)%n",(how+" heap"),((after-before)/1048576.0),(int)text.charAt(0));
+    }
+    private static long Used(){
+        Runtime rt = Runtime.getRuntime();
+        for (int cc = 0; cc < 4; cc++){
+            System.gc();
+        }
+        return (rt.totalMemory()-rt.freeMemory());
+    }
+    /**
+     * Write lines of text to the file.
+     *
+     * @return Bytes written
+     */
+    private static int Text(File file, int size)
+        throws java.io.IOException
+    {
+        byte[] line = "The quick brown fox jumps over the lazy dog. caf\u00e9 \u00fcber \u65e5\u672c\u8a9e\n".getBytes("UTF-8");
+        byte[] block = new byte[line.length*1024];
+        for (int cc = 0; cc < block.length; cc += line.length){
+            System.arraycopy(line,0,block,cc,line.length);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            int written = 0;
+            while (written < size){
+                out.write(block);
+                written += block.length;
+            }
+            return written;
+        }
+        finally {
+            out.close();
+        }
+    }
+}
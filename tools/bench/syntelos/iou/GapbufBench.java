@@ -0,0 +1,151 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.util.Random;
+
+/**
+ * <p> Clustered editing in {@link Gapbuf}, against {@link Chbuf}
+ * and <code>`StringBuilder'</code>, in documents of a range of
+ * sizes.  Each session moves the cursor a short distance near the
+ * middle of the document, types a word, and deletes some of it.  The
+ * content of the three is compared before timing, and loading the
+ * document is not timed. </p>
+ *
+ * <pre>
+ * java -cp /tmp/iou syntelos.iou.GapbufBench [mchars ...]
+ * </pre>
+ */
+public class GapbufBench {
+
+    private final static int SESSIONS = 20, TYPE = 50, ERASE = 10;
+
+    private final static int RUNS = 3;
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        int[] sizes;
+        if (0 < argv.length){
+            sizes = new int[argv.length];
+            for (int cc = 0; cc < argv.length; cc++){
+                sizes[cc] = Bench.Arg(argv,cc,1);
+            }
+        }
+        else
+            sizes = new int[]{1, 10};
+
+        for (int mchars : sizes){
+
+            final char[] text = new char[mchars<<20];
+            for (int cc = 0; cc < text.length; cc++){
+                text[cc] = (0 == (cc & 63))?('\n'):((char)('a'+(cc % 26)));
+            }
+            final long edits = (SESSIONS*(TYPE+ERASE));
+
+            char[] g = Edit(new Gapbuf(text)).toCharArray();
+            char[] c = Edit(Load(text)).toCary();
+            char[] s = Edit(new StringBuilder(text.length).append(text)).toString().toCharArray();
+            if (!java.util.Arrays.equals(g,c) || !java.util.Arrays.equals(g,s))
+                throw new IllegalStateException("Content differs");
+
+            new Bench(("gapbuf "+mchars+"M"),edits,"edit"){
+                Gapbuf buf;
+                protected void setup(){
+                    this.buf = null;
+                    this.buf = new Gapbuf(text);
+                }
+                protected long run(){
+                    return Edit(this.buf).length();
+                }
+            }.time(1,RUNS);
+
+            new Bench(("chbuf "+mchars+"M"),edits,"edit"){
+                Chbuf buf;
+                protected void setup(){
+                    this.buf = null;
+                    this.buf = Load(text);
+                }
+                protected long run(){
+                    return Edit(this.buf).length();
+                }
+            }.time(1,RUNS);
+
+            new Bench(("stringbuilder "+mchars+"M"),edits,"edit"){
+                StringBuilder buf;
+                protected void setup(){
+                    this.buf = null;
+                    this.buf = new StringBuilder(text.length).append(text);
+                }
+                protected long run(){
+                    return Edit(this.buf).length();
+                }
+            }.time(1,RUNS);
+        }
+    }
+    private static Chbuf Load(char[] text){
+        Chbuf buf = new Chbuf(text.length);
+        buf.append(text,0,text.length);
+        return buf;
+    }
+    private static Gapbuf Edit(Gapbuf buf){
+        Random random = new Random(buf.length());
+        int cursor = (buf.length()>>1);
+        for (int session = 0; session < SESSIONS; session++){
+            cursor += (random.nextInt(200)-100);
+            for (int cc = 0; cc < TYPE; cc++){
+                buf.insert(cursor++,(char)('A'+cc % 26));
+            }
+            for (int cc = 0; cc < ERASE; cc++){
+                buf.deleteCharAt(--cursor);
+            }
+        }
+        return buf;
+    }
+    private static Chbuf Edit(Chbuf buf){
+        Random random = new Random(buf.length());
+        int cursor = (buf.length()>>1);
+        for (int session = 0; session < SESSIONS; session++){
+            cursor += (random.nextInt(200)-100);
+            for (int cc = 0; cc < TYPE; cc++){
+                buf.insert(cursor++,(char)('A'+cc % 26));
+            }
+            for (int cc = 0; cc < ERASE; cc++){
+                buf.deleteCharAt(--cursor);
+            }
+        }
+        return buf;
+    }
+    private static StringBuilder Edit(StringBuilder buf){
+        Random random = new Random(buf.length());
+        int cursor = (buf.length()>>1);
+        for (int session = 0; session < SESSIONS; session++){
+            cursor += (random.nextInt(200)-100);
+            for (int cc = 0; cc < TYPE; cc++){
+                buf.insert(cursor++,(char)('A'+cc % 26));
+            }
+            for (int cc = 0; cc < ERASE; cc++){
+                buf.deleteCharAt(--cursor);
+            }
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * <p> {@link Printer} cell table rendering against the former
+ * <code>`printf'</code> per byte, in each offset and content mode.
+ * The output of the two is compared before timing. </p>
+ *
+ * <pre>
+ * java -cp /tmp/iou syntelos.iou.PrinterBench [kbytes [runs]]
+ * </pre>
+ */
+public class PrinterBench {
+
+    /**
+     * Discards output.
+     */
+    private final static OutputStream Null = new OutputStream(){
+            public void write(int b){
+            }
+            public void write(byte[] b, int o, int l){
+            }
+        };
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        int size = (Bench.Arg(argv,0,256)<<10);
+        int runs = Bench.Arg(argv,1,10);
+
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        final PrintStream out = new PrintStream(Null,false,"US-ASCII");
+
+        for (Printer.Offset o : Printer.Offset.values()){
+
+            for (Printer.Content c : Printer.Content.values()){
+
+                final Printer table = new Printer(o,c);
+                final Printf printf = new Printf(o,c);
+
+                ByteArrayOutputStream a = new ByteArrayOutputStream(), b = new ByteArrayOutputStream();
+                PrintStream pa = new PrintStream(a,false,"US-ASCII"), pb = new PrintStream(b,false,"US-ASCII");
+                table.reset();
+                table.print(data,0,size,pa);
+                printf.print(data,0,size,pb);
+                pa.flush();
+                pb.flush();
+                if (!java.util.Arrays.equals(a.toByteArray(),b.toByteArray()))
+                    throw new IllegalStateException("Output differs in "+o+" "+c);
+
+                new Bench(("printf "+o+" "+c),size,"B"){
+                    protected long run(){
+                        printf.p = 0;
+                        printf.print(data,0,data.length,out);
+                        return printf.p;
+                    }
+                }.time(1,Math.max(1,runs>>2));
+
+                new Bench(("table "+o+" "+c),size,"B"){
+                    protected long run(){
+                        table.reset();
+                        table.print(data,0,data.length,out);
+                        return table.tell();
+                    }
+                }.time(3,runs);
+            }
+        }
+    }
+
+    /**
+     * The printer as it was before the cell tables.
+     */
+    private final static class Printf {
+
+        final Printer.Offset offset;
+
+        final Printer.Content content;
+
+        int p;
+
+
+        Printf(Printer.Offset o, Printer.Content c){
+            super();
+            this.offset = o;
+            this.content = c;
+        }
+
+
+        void offset(PrintStream out){
+            switch(this.offset){
+            case DEC:
+                out.printf("%07d",p);
+                break;
+            case HEX:
+                out.printf("%08X",p);
+                break;
+            default:
+                throw new InternalError(this.offset.name());
+            }
+        }
+        void content(int ch, PrintStream out){
+            switch(this.content){
+
+            case ASC:
+                Printer.ASCII as = Printer.ASCII.valueOf(ch);
+                if (null != as){
+
+                    out.printf(" %3s",as.name());
+                }
+                else if (0x20 < ch && 0x7F > ch){
+
+                    out.printf(" %3c",ch);
+                }
+                else {
+
+                    out.printf(" %03X",ch);
+                }
+                break;
+
+            case HEX:
+                out.printf(" %02X",ch);
+                break;
+
+            default:
+                throw new InternalError(this.content.name());
+            }
+        }
+        void print(byte[] b, int i, int l, PrintStream out){
+
+            int z = (i+l);
+
+            int c = 0;
+
+            while (i < z){
+
+                offset(out);
+
+                for (c = 0; c < 20 && i < z; c++,p++,i++){
+
+                    content( (b[i] & 0xFF), out);
+                }
+
+                out.println();
+            }
+
+            offset(out);
+            out.println();
+        }
+    }
+}
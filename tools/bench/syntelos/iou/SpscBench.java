@@ -0,0 +1,153 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+/**
+ * <p> Throughput of {@link Spsc.Bytes} against the synchronized
+ * {@link Rbuf}, from one producer thread to one consumer thread, over
+ * a range of chunk sizes.  The consumer sums the bytes, and the sums
+ * are compared. </p>
+ *
+ * <p> The producer and consumer of the lock free ring yield when
+ * they find no room or no content.  Those of the synchronized ring
+ * wait on its monitor.  The results depend on the number of
+ * processors. </p>
+ *
+ * <pre>
+ * java -cp /tmp/iou syntelos.iou.SpscBench [mbytes [runs]]
+ * </pre>
+ */
+public class SpscBench {
+
+    private final static int CAPACITY = 0x10000;
+
+    private final static int[] CHUNKS = {16, 256, 4096};
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        final int size = (Bench.Arg(argv,0,64)<<20);
+        int runs = Bench.Arg(argv,1,5);
+
+        System.out.printf("%d processors%n",Runtime.getRuntime().availableProcessors());
+
+        for (final int chunk : CHUNKS){
+
+            new Bench(("spsc chunk "+chunk),size,"B"){
+                    protected long run() throws Exception {
+                        return Spsc(size,chunk);
+                    }
+                }.time(1,runs);
+
+            new Bench(("synchronized chunk "+chunk),size,"B"){
+                    protected long run() throws Exception {
+                        return Sync(size,chunk);
+                    }
+                }.time(1,runs);
+        }
+        if (Spsc(size,CHUNKS[0]) != Sync(size,CHUNKS[0]))
+            throw new IllegalStateException("Sums differ");
+    }
+    private static long Spsc(final int size, final int chunk)
+        throws Exception
+    {
+        final Spsc.Bytes ring = new Spsc.Bytes(CAPACITY);
+
+        Thread producer = new Thread(){
+                public void run(){
+                    byte[] src = Chunk(chunk);
+                    for (int sent = 0; sent < size; ){
+                        int many = Math.min(chunk,(size-sent));
+                        for (int ofs = 0; ofs < many; ){
+                            int n = ring.offer(src,ofs,(many-ofs));
+                            if (0 < n)
+                                ofs += n;
+                            else
+                                Thread.yield();
+                        }
+                        sent += many;
+                    }
+                    ring.close();
+                }
+            };
+        producer.start();
+
+        byte[] dst = new byte[chunk];
+        long sum = 0L;
+        while (true){
+            int n = ring.poll(dst,0,chunk);
+            if (0 < n)
+                sum += Sum(dst,n);
+            else if (ring.isEnd())
+                break;
+            else
+                Thread.yield();
+        }
+        producer.join();
+        return sum;
+    }
+    private static long Sync(final int size, final int chunk)
+        throws Exception
+    {
+        final Rbuf ring = new Rbuf(CAPACITY);
+
+        Thread producer = new Thread(){
+                public void run(){
+                    try {
+                        byte[] src = Chunk(chunk);
+                        for (int sent = 0; sent < size; ){
+                            int many = Math.min(chunk,(size-sent));
+                            ring.write(src,0,many);
+                            sent += many;
+                        }
+                        ring.close();
+                    }
+                    catch (java.io.IOException exc){
+                        throw new IllegalStateException(exc);
+                    }
+                }
+            };
+        producer.start();
+
+        byte[] dst = new byte[chunk];
+        long sum = 0L;
+        int n;
+        while (-1 < (n = ring.take(dst,0,chunk))){
+            sum += Sum(dst,n);
+        }
+        producer.join();
+        return sum;
+    }
+    private static byte[] Chunk(int chunk){
+        byte[] src = new byte[chunk];
+        for (int cc = 0; cc < chunk; cc++){
+            src[cc] = (byte)cc;
+        }
+        return src;
+    }
+    private static long Sum(byte[] b, int n){
+        long sum = 0L;
+        for (int cc = 0; cc < n; cc++){
+            sum += (b[cc] & 0xFF);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * <p> {@link Utf8} array encoding and decoding against the
+ * <code>`java.nio.charset'</code> coders, over ASCII, Latin-1, CJK
+ * and emoji text.  Both sides write into presized arrays, and the
+ * output of the two is compared before timing.  The String
+ * conversions are included for reference. </p>
+ *
+ * <pre>
+ * java -cp /tmp/iou syntelos.iou.Utf8Bench [mchars [runs]]
+ * </pre>
+ */
+public class Utf8Bench {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        int size = (Bench.Arg(argv,0,4)<<20);
+        int runs = Bench.Arg(argv,1,10);
+
+        String[][] corpus = {
+            {"ascii",  "The quick brown fox jumps over the lazy dog.\n"},
+            {"latin1", "Voix ambigu\u00eb d'un c\u0153ur qui au z\u00e9phyr pr\u00e9f\u00e8re les jattes de kiwis. \u00fc\u00df\u00e5\n"},
+            {"cjk",    "\u65e5\u672c\u8a9e\u306e\u6587\u7ae0\u3068\u4e2d\u6587\u7684\u53e5\u5b50\uff0c\ud55c\uad6d\uc5b4 \u6587\u5b57\u3002\n"},
+            {"emoji",  "\ud83d\ude00\ud83d\ude80\ud83c\udf89 ok \ud83d\udc4d\ud83c\udffd\ud83e\udd14\n"}
+        };
+
+        for (String[] kind : corpus){
+
+            final char[] chars = Text(kind[1],size);
+            final byte[] bytes = new String(chars).getBytes(UTF8);
+            final char[] cdst = new char[chars.length];
+            final byte[] bdst = new byte[bytes.length];
+
+            final CharsetEncoder enc = UTF8.newEncoder();
+            final CharsetDecoder dec = UTF8.newDecoder();
+
+            if (bytes.length != Utf8.encode(chars,0,chars.length,bdst,0) || !java.util.Arrays.equals(bytes,bdst))
+                throw new IllegalStateException("Encoding differs in "+kind[0]);
+            else if (chars.length != Utf8.decode(bytes,0,bytes.length,cdst,0) || !java.util.Arrays.equals(chars,cdst))
+                throw new IllegalStateException("Decoding differs in "+kind[0]);
+
+            new Bench(("utf8 encode "+kind[0]),chars.length,"char"){
+                protected long run(){
+                    return Utf8.encode(chars,0,chars.length,bdst,0);
+                }
+            }.time(5,runs);
+
+            new Bench(("nio encode "+kind[0]),chars.length,"char"){
+                protected long run(){
+                    enc.reset();
+                    ByteBuffer out = ByteBuffer.wrap(bdst);
+                    enc.encode(CharBuffer.wrap(chars),out,true);
+                    enc.flush(out);
+                    return out.position();
+                }
+            }.time(5,runs);
+
+            new Bench(("string getBytes "+kind[0]),chars.length,"char"){
+                final String string = new String(chars);
+                protected long run(){
+                    return this.string.getBytes(UTF8).length;
+                }
+            }.time(5,runs);
+
+            new Bench(("utf8 decode "+kind[0]),bytes.length,"B"){
+                protected long run(){
+                    return Utf8.decode(bytes,0,bytes.length,cdst,0);
+                }
+            }.time(5,runs);
+
+            new Bench(("nio decode "+kind[0]),bytes.length,"B"){
+                protected long run(){
+                    dec.reset();
+                    CharBuffer out = CharBuffer.wrap(cdst);
+                    dec.decode(ByteBuffer.wrap(bytes),out,true);
+                    dec.flush(out);
+                    return out.position();
+                }
+            }.time(5,runs);
+
+            new Bench(("new String "+kind[0]),bytes.length,"B"){
+                protected long run(){
+                    return new String(bytes,UTF8).length();
+                }
+            }.time(5,runs);
+        }
+    }
+    /**
+     * @return Repetitions of the line, to about the size
+     */
+    private static char[] Text(String line, int size){
+        int n = Math.max(1,(size/line.length()));
+        StringBuilder text = new StringBuilder(n*line.length());
+        for (int cc = 0; cc < n; cc++){
+            text.append(line);
+        }
+        return text.toString().toCharArray();
+    }
+}
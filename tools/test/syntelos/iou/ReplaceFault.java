@@ -0,0 +1,285 @@
+/*
+ * Syntelos ENA
+ * Copyright (C) 1998, 2009, 2018  John Pritchard, Syntelos.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package syntelos.iou;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * <p> Fault injection harness for {@link Replace}, on a desktop JDK
+ * 8 or later. </p>
+ *
+ * <p> The first phase fails the write at random offsets, and the
+ * directory sync following the rename.  The second phase kills a
+ * child JVM at a random time during its replacement.  After each
+ * save, the target must hold the whole of either the previous or the
+ * new generation of content.  A failed write must leave no temporary
+ * file. </p>
+ *
+ * <pre>
+ * javac -d /tmp/iou src/syntelos/iou/*.java tools/test/syntelos/iou/ReplaceFault.java
+ * java -cp /tmp/iou syntelos.iou.ReplaceFault [saves [kills]]
+ * </pre>
+ *
+ * <p> A power failure is not simulated: the harness checks the
+ * ordering of write, rename and cleanup, not the device. </p>
+ */
+public class ReplaceFault
+    extends Replace
+{
+
+    private final static int BLOCK = 0x10000;
+
+
+    public static void main(String[] argv)
+        throws Exception
+    {
+        if (0 < argv.length && "child".equals(argv[0])){
+
+            Child(new File(argv[1]),Integer.parseInt(argv[2]));
+        }
+        else {
+            int saves = (0 < argv.length)?(Integer.parseInt(argv[0])):(300);
+            int kills = (1 < argv.length)?(Integer.parseInt(argv[1])):(40);
+
+            File dir = new File(System.getProperty("java.io.tmpdir"),("replace-fault-"+System.nanoTime()));
+            if (!dir.mkdirs())
+                throw new IOException(dir.getPath());
+
+            File target = new File(dir,"target.txt");
+
+            Inject(target,saves);
+
+            Kill(target,kills);
+
+            System.out.println("ok");
+        }
+    }
+    /**
+     * Fail the write at random offsets, or the directory sync.
+     */
+    private static void Inject(File target, int saves)
+        throws IOException
+    {
+        Random random = new Random(saves);
+        int generation = 0, failed = 0;
+
+        Generation(generation,target);
+
+        for (int cc = 0; cc < saves; cc++){
+
+            int next = (generation+1);
+            long length = Length(next);
+            long fail = (random.nextBoolean())?(-1L):((long)(random.nextDouble()*length));
+            boolean failsync = (0 == random.nextInt(10));
+
+            ReplaceFault replace = new ReplaceFault(next,fail,failsync);
+            try {
+                if (!replace.replace(target,true))
+                    throw new IllegalStateException("Not replaced");
+                else
+                    generation = next;
+            }
+            catch (IOException injected){
+
+                failed += 1;
+
+                if (replace.renamed)
+                    generation = next;
+            }
+
+            Check(target,generation);
+
+            if (Replace.Temp(target).exists())
+                throw new IllegalStateException("Temporary file remains following save "+cc);
+        }
+        System.out.printf("inject: %d saves, %d failures, generation %d%n",saves,failed,generation);
+    }
+    /**
+     * Kill a child replacing the target at random times.
+     */
+    private static void Kill(File target, int kills)
+        throws Exception
+    {
+        Random random = new Random(kills);
+        int generation = Check(target,-1), killed = 0;
+
+        String java = new File(new File(System.getProperty("java.home"),"bin"),"java").getPath();
+        String classpath = System.getProperty("java.class.path");
+
+        for (int cc = 0; cc < kills; cc++){
+
+            int next = (generation+1);
+
+            Process child = new ProcessBuilder(java,"-cp",classpath,ReplaceFault.class.getName(),
+                                               "child",target.getPath(),String.valueOf(next)).inheritIO().start();
+
+            Thread.sleep(50+random.nextInt(300));
+
+            if (child.isAlive()){
+                child.destroyForcibly();
+                killed += 1;
+            }
+            child.waitFor();
+
+            int found = Check(target,-1);
+            if (found != generation && found != next)
+                throw new IllegalStateException(String.format("Found generation %d following %d",found,generation));
+            else
+                generation = found;
+        }
+        System.out.printf("kill: %d children, %d killed, generation %d%n",kills,killed,generation);
+    }
+    private static void Child(File target, int generation)
+        throws IOException
+    {
+        new ReplaceFault(generation,-1L,false).replace(target,true);
+    }
+    /**
+     * Write a generation of content in place.
+     */
+    private static void Generation(int generation, File target)
+        throws IOException
+    {
+        java.io.FileOutputStream os = new java.io.FileOutputStream(target);
+        try {
+            new ReplaceFault(generation,-1L,false).write(os.getChannel());
+        }
+        finally {
+            os.close();
+        }
+    }
+    /**
+     * @return Generation of the whole content of the target
+     *
+     * @param expect Expected generation, or negative for either
+     */
+    private static int Check(File target, int expect)
+        throws IOException
+    {
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(target,"r");
+        try {
+            FileChannel fc = raf.getChannel();
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && 0 < fc.read(head));
+            if (head.hasRemaining())
+                throw new IllegalStateException("Truncated target");
+
+            int generation = head.getInt(0);
+            if (-1 < expect && expect != generation)
+                throw new IllegalStateException(String.format("Found generation %d expecting %d",generation,expect));
+
+            long length = Length(generation);
+            if (length != fc.size())
+                throw new IllegalStateException(String.format("Found length %d of generation %d expecting %d",fc.size(),generation,length));
+
+            ByteBuffer expected = ByteBuffer.allocate(BLOCK), found = ByteBuffer.allocate(BLOCK);
+            for (long ofs = 4L; ofs < length; ){
+                int many = (int)Math.min(BLOCK,(length-ofs));
+                Fill(generation,ofs,expected,many);
+                found.clear();
+                found.limit(many);
+                while (found.hasRemaining() && 0 < fc.read(found));
+                found.flip();
+                if (!found.equals(expected))
+                    throw new IllegalStateException(String.format("Content of generation %d differs at %d",generation,ofs));
+                ofs += many;
+            }
+            return generation;
+        }
+        finally {
+            raf.close();
+        }
+    }
+    private static long Length(int generation){
+        return (4L+(new Random(generation).nextInt(0x800000)));
+    }
+    private static void Fill(int generation, long ofs, ByteBuffer bb, int many){
+        bb.clear();
+        for (int cc = 0; cc < many; cc++){
+            long p = (ofs+cc);
+            bb.put((byte)(generation ^ (p * 0x9E3779B1L) >>> 24));
+        }
+        bb.flip();
+    }
+
+
+    private final int generation;
+
+    private final long fail;
+
+    private final boolean failsync;
+
+    private boolean renamed;
+
+
+    private ReplaceFault(int generation, long fail, boolean failsync){
+        super();
+        this.generation = generation;
+        this.fail = fail;
+        this.failsync = failsync;
+    }
+
+
+    protected void write(FileChannel out)
+        throws IOException
+    {
+        long length = Length(this.generation);
+
+        ByteBuffer head = ByteBuffer.allocate(4);
+        head.putInt(0,this.generation);
+        Chbuf.Drain(head,out);
+
+        ByteBuffer bb = ByteBuffer.allocate(BLOCK);
+        for (long ofs = 4L; ofs < length; ){
+            int many = (int)Math.min(BLOCK,(length-ofs));
+
+            if (-1L < this.fail && this.fail < (ofs+many)){
+
+                Fill(this.generation,ofs,bb,(int)(this.fail-ofs));
+                Chbuf.Drain(bb,out);
+                throw new IOException("Injected write failure at "+this.fail);
+            }
+            Fill(this.generation,ofs,bb,many);
+            Chbuf.Drain(bb,out);
+            ofs += many;
+        }
+    }
+    protected void sync(File dir)
+        throws IOException
+    {
+        this.renamed = true;
+
+        if (this.failsync)
+            throw new IOException("Injected sync failure");
+        else {
+            FileChannel fc = FileChannel.open(dir.toPath(),java.nio.file.StandardOpenOption.READ);
+            try {
+                fc.force(true);
+            }
+            finally {
+                fc.close();
+            }
+        }
+    }
+}